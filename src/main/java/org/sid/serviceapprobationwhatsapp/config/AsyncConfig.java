@@ -0,0 +1,147 @@
+package org.sid.serviceapprobationwhatsapp.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for blocking work (JPA, Twilio, Graph API). Nothing should run on the common ForkJoinPool.
+ * <p>
+ * {@code executor.mode=platform} (default) gives bounded, named thread pools whose
+ * executor.active / executor.queued metrics are published by Spring Boot.
+ * {@code executor.mode=virtual} runs one virtual thread per task (JDK 21+), capped by the same pool size,
+ * and publishes an executor.active gauge.
+ */
+@Configuration
+@EnableAsync
+@EnableScheduling
+public class AsyncConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncConfig.class);
+
+    @Value("${executor.mode:platform}")
+    private String mode;
+
+    @Value("${executor.pool-size:16}")
+    private int taskPoolSize;
+
+    @Value("${executor.queue-capacity:500}")
+    private int taskQueueCapacity;
+
+    @Value("${outbox.workers:4}")
+    private int outboxWorkers;
+
+    @Value("${outbox.queue-capacity:200}")
+    private int outboxQueueCapacity;
+
+    @Value("${fanout.pool-size:16}")
+    private int fanOutPoolSize;
+
+    @Value("${fanout.queue-capacity:500}")
+    private int fanOutQueueCapacity;
+
+    @Value("${callback.workers:8}")
+    private int callbackWorkers;
+
+    @Value("${callback.queue-capacity:200}")
+    private int callbackQueueCapacity;
+
+    @Value("${scheduler.pool-size:4}")
+    private int schedulerPoolSize;
+
+    private final MeterRegistry meterRegistry;
+
+    public AsyncConfig(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Request handling work (registration) and @Async methods
+    @Bean(name = {"taskExecutor", "applicationTaskExecutor"})
+    @Primary
+    public AsyncTaskExecutor taskExecutor() {
+        return createExecutor("approval-", taskPoolSize, taskQueueCapacity);
+    }
+
+    // Shared by all registrations, each one is additionally capped at fanout.concurrency in-flight approvers
+    @Bean
+    public AsyncTaskExecutor fanOutExecutor() {
+        return createExecutor("fanout-", fanOutPoolSize, fanOutQueueCapacity);
+    }
+
+    // Drains the outbox; a bounded queue so a Graph API outage back-pressures the poller instead of piling up tasks
+    @Bean
+    public AsyncTaskExecutor outboxExecutor() {
+        return createExecutor("outbox-", outboxWorkers, outboxQueueCapacity);
+    }
+
+    // Posts decisions to origin systems, per-host limits are applied on top by the callback dispatcher
+    @Bean
+    public AsyncTaskExecutor callbackExecutor() {
+        return createExecutor("callback-", callbackWorkers, callbackQueueCapacity);
+    }
+
+    // Runs every @Scheduled job (outbox, callbacks, mapping flush, expiry tick, purges, sweeps, heartbeats).
+    // Boot's default is a single thread, on which one slow job delays all the others
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(Math.max(1, schedulerPoolSize));
+        scheduler.setThreadNamePrefix("scheduler-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(30);
+        return scheduler;
+    }
+
+    private AsyncTaskExecutor createExecutor(String threadNamePrefix, int poolSize, int queueCapacity) {
+        if ("virtual".equalsIgnoreCase(mode)) {
+            return virtualExecutor(threadNamePrefix, poolSize);
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    private AsyncTaskExecutor virtualExecutor(String threadNamePrefix, int concurrencyLimit) {
+        if (Runtime.version().feature() < 21) {
+            throw new IllegalStateException("executor.mode=virtual requires Java 21+, running on " + Runtime.version());
+        }
+        AtomicInteger active = new AtomicInteger();
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(concurrencyLimit);
+        executor.setTaskDecorator(task -> () -> {
+            active.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+            }
+        });
+
+        String name = threadNamePrefix.substring(0, threadNamePrefix.length() - 1);
+        Gauge.builder("executor.active", active, AtomicInteger::get)
+                .tag("name", name)
+                .description("Tasks currently running on virtual threads")
+                .register(meterRegistry);
+        logger.info("Executor '{}' running on virtual threads, concurrency limit {}", name, concurrencyLimit);
+        return executor;
+    }
+}
@@ -0,0 +1,9 @@
+package org.sid.serviceapprobationwhatsapp.dto;
+
+import org.sid.serviceapprobationwhatsapp.enums.statut;
+
+import java.time.LocalDateTime;
+
+// Projection for approver-side lookups: the scalar columns they read, never the payload LOBs
+public record ApprovalDecisionView(String id, String objectType, String objectId, statut decision, LocalDateTime requestTimeStamp) {
+}
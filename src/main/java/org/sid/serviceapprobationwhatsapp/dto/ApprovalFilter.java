@@ -0,0 +1,9 @@
+package org.sid.serviceapprobationwhatsapp.dto;
+
+import org.sid.serviceapprobationwhatsapp.enums.statut;
+
+import java.time.LocalDateTime;
+
+// Optional criteria of the approval listing and export, null means no constraint; from inclusive, to exclusive
+public record ApprovalFilter(statut decision, String origin, String objectType, String approver, LocalDateTime from, LocalDateTime to) {
+}
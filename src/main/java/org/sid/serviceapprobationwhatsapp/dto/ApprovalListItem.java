@@ -0,0 +1,10 @@
+package org.sid.serviceapprobationwhatsapp.dto;
+
+import org.sid.serviceapprobationwhatsapp.enums.statut;
+
+import java.time.LocalDateTime;
+
+// One row of the approval listing, scalar columns only (no payloads, no associations)
+public record ApprovalListItem(String id, String objectType, String objectId, String origin, String demandeur,
+                               statut decision, LocalDateTime requestTimeStamp) {
+}
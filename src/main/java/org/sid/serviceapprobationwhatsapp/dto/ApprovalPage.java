@@ -0,0 +1,7 @@
+package org.sid.serviceapprobationwhatsapp.dto;
+
+import java.util.List;
+
+// nextCursor is null on the last page
+public record ApprovalPage(List<ApprovalListItem> items, String nextCursor) {
+}
@@ -13,14 +13,17 @@ import java.util.Map;
 public class ApprovalRequestDTO {
 
     @NotBlank(message = "Object type is required")
+    @Size(max = 64, message = "Object type is limited to 64 characters")
     private String objectType;
 
     @NotBlank(message = "Object id is required")
+    @Size(max = 128, message = "Object id is limited to 128 characters")
     private String objectId;
 
     @NotNull
     private Map<String,Object> approvalData;
 
+    @Size(max = 64, message = "Origin is limited to 64 characters")
     private String origin;
 
     @NotEmpty(message = "Approver list cant be empty")
@@ -0,0 +1,12 @@
+package org.sid.serviceapprobationwhatsapp.dto;
+
+public record ApproverNotificationResult(String phoneNumber, boolean reached, String error) {
+
+    public static ApproverNotificationResult reached(String phoneNumber) {
+        return new ApproverNotificationResult(phoneNumber, true, null);
+    }
+
+    public static ApproverNotificationResult failed(String phoneNumber, String error) {
+        return new ApproverNotificationResult(phoneNumber, false, error);
+    }
+}
@@ -0,0 +1,31 @@
+package org.sid.serviceapprobationwhatsapp.dto;
+
+// Outcome of one entry of a batch registration, index is its position in the submitted list
+public record BatchItemResult(int index, String approvalId, String status, String error) {
+
+    public static final String CREATED = "CREATED";
+    public static final String INVALID = "INVALID";
+    public static final String FAILED = "FAILED";
+    // Already registered and still undecided, approvalId is that existing request
+    public static final String DUPLICATE = "DUPLICATE";
+
+    public static BatchItemResult created(int index, String approvalId) {
+        return new BatchItemResult(index, approvalId, CREATED, null);
+    }
+
+    public static BatchItemResult invalid(int index, String error) {
+        return new BatchItemResult(index, null, INVALID, error);
+    }
+
+    public static BatchItemResult failed(int index, String error) {
+        return new BatchItemResult(index, null, FAILED, error);
+    }
+
+    public static BatchItemResult duplicate(int index, String approvalId) {
+        return new BatchItemResult(index, approvalId, DUPLICATE, null);
+    }
+
+    public boolean created() {
+        return CREATED.equals(status);
+    }
+}
@@ -0,0 +1,6 @@
+package org.sid.serviceapprobationwhatsapp.dto;
+
+import java.time.Instant;
+
+public record ButtonToken(String approvalId, int approverIndex, Instant expiresAt) {
+}
@@ -0,0 +1,5 @@
+package org.sid.serviceapprobationwhatsapp.dto;
+
+// What a decision callback needs from the approval, read without loading the entity
+public record CallbackTarget(String callbackUrl, String objectType, String objectId, String origin) {
+}
@@ -0,0 +1,9 @@
+package org.sid.serviceapprobationwhatsapp.dto;
+
+import org.sid.serviceapprobationwhatsapp.enums.statut;
+
+import java.time.LocalDateTime;
+
+// An approver decision, as pushed to stream subscribers and posted to callbacks
+public record DecisionEvent(String approvalId, String origin, String objectType, String objectId, statut decision, LocalDateTime decidedAt) {
+}
@@ -0,0 +1,10 @@
+package org.sid.serviceapprobationwhatsapp.dto;
+
+import java.util.List;
+
+public record DueExpirations(List<Long> otpIds, List<String> resendMappingIds) {
+
+    public boolean isEmpty() {
+        return otpIds.isEmpty() && resendMappingIds.isEmpty();
+    }
+}
@@ -0,0 +1,9 @@
+package org.sid.serviceapprobationwhatsapp.dto;
+
+// code is only set when we deliver it ourselves, codeHash/codeSalt only when we verify it ourselves
+public record OtpChallenge(String verificationSid, String code, String codeHash, String codeSalt) {
+
+    public static OtpChallenge delivered(String verificationSid) {
+        return new OtpChallenge(verificationSid, null, null, null);
+    }
+}
@@ -0,0 +1,15 @@
+package org.sid.serviceapprobationwhatsapp.dto;
+
+import org.sid.serviceapprobationwhatsapp.entities.ApprovalOTP;
+
+import java.time.LocalDateTime;
+
+// Read-only snapshot of a pending OTP row, safe to share between threads; state changes go through the repository
+public record PendingOtp(Long otpId, String approvalId, String recipientNumber, String verificationSid,
+                         String codeHash, String codeSalt, LocalDateTime createdAt, LocalDateTime expiration) {
+
+    public static PendingOtp of(ApprovalOTP otp) {
+        return new PendingOtp(otp.getOtpId(), otp.getApprovalRequest().getId(), otp.getRecipientNumber(), otp.getVerificationSid(),
+                otp.getCodeHash(), otp.getCodeSalt(), otp.getCreatedAt(), otp.getExpiration());
+    }
+}
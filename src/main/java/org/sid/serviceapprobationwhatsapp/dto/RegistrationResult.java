@@ -0,0 +1,15 @@
+package org.sid.serviceapprobationwhatsapp.dto;
+
+import org.sid.serviceapprobationwhatsapp.entities.ApprovalRequest;
+
+// approvalRequest is only set when this call created it; a replay carries the original id and nothing to notify
+public record RegistrationResult(String approvalId, ApprovalRequest approvalRequest, boolean replayed) {
+
+    public static RegistrationResult created(ApprovalRequest approvalRequest) {
+        return new RegistrationResult(approvalRequest.getId(), approvalRequest, false);
+    }
+
+    public static RegistrationResult replayed(String approvalId) {
+        return new RegistrationResult(approvalId, null, true);
+    }
+}
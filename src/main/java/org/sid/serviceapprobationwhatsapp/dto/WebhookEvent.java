@@ -0,0 +1,20 @@
+package org.sid.serviceapprobationwhatsapp.dto;
+
+/**
+ * Inbound WhatsApp webhook events, decoded straight from the request body.
+ */
+public sealed interface WebhookEvent {
+
+    String messageId();
+
+    // Quick-reply button click, contextId is the id of the message that carried the button
+    record ButtonClick(String messageId, String from, String contextId, String payload, String text) implements WebhookEvent {
+    }
+
+    record TextMessage(String messageId, String from, String body) implements WebhookEvent {
+    }
+
+    // Delivery status of a message we sent (sent, delivered, read, failed)
+    record Status(String messageId, String recipientId, String status) implements WebhookEvent {
+    }
+}
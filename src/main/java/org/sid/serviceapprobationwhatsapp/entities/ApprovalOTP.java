@@ -3,29 +3,49 @@ package org.sid.serviceapprobationwhatsapp.entities;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
-import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 import org.sid.serviceapprobationwhatsapp.enums.otpStatut;
 
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "approval_otp")
-@Data
+@Table(name = "approval_otp",
+        indexes = @Index(name = "idx_otp_phone_status", columnList = "phone_number, status, created_at"),
+        // One verification can cover several approvals (coalesced OTP), but only once each
+        uniqueConstraints = @UniqueConstraint(name = "uk_otp_verification_request", columnNames = {"verification_sid", "request_id"}))
+// The OTP with its request, whose LOB columns stay unloaded: what the verification and index paths read
+@NamedEntityGraph(name = ApprovalOTP.WITH_REQUEST, attributeNodes = @NamedAttributeNode("approvalRequest"))
+// No equals/hashCode: entity identity, nothing walks into the request
+@Getter @Setter
+@ToString
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 public class ApprovalOTP {
 
+    public static final String WITH_REQUEST = "ApprovalOTP.withRequest";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled sequence: one round trip hands out 50 ids, and inserts stay batchable (IDENTITY disables batching)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "approval_otp_seq")
+    @SequenceGenerator(name = "approval_otp_seq", sequenceName = "approval_otp_seq", allocationSize = 50)
     private Long otpId;
 
     @Column(name = "phone_number", nullable = false)
     private String recipientNumber;
 
     @Column(name = "verification_sid", nullable = false)
-    private String verificationSid; // From Twilio Verify
+    private String verificationSid; // From Twilio Verify, or generated by the local provider
+
+    // Local provider only: HMAC of the salted code, never the code itself
+    @Column(name = "code_hash", length = 64)
+    private String codeHash;
+
+    @Column(name = "code_salt", length = 32)
+    private String codeSalt;
 
     @Column(name = "status", nullable = false)
     private otpStatut status;
@@ -39,14 +59,11 @@ public class ApprovalOTP {
     @Column(name = "invalid_attempts")
     private int invalidattempts;
 
-    @ManyToOne(fetch = FetchType.EAGER) // Use FetchType.LAZY for performance
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "request_id", referencedColumnName = "id")
+    @ToString.Exclude
     private ApprovalRequest approvalRequest;
 
-    // New field for idempotency to mark if an OTP attempt is being processed.
-    @Column(name = "processing", nullable = false)
-    private boolean processing;
-
 //    @Column(name = "whatsapp_message_id")
 //    private String whatsappMessageId; // Optional
 }
\ No newline at end of file
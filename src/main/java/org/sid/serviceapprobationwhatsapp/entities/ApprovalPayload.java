@@ -0,0 +1,41 @@
+package org.sid.serviceapprobationwhatsapp.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.sid.serviceapprobationwhatsapp.enums.payloadKind;
+import org.sid.serviceapprobationwhatsapp.payload.PayloadConverter;
+
+// Payloads too large to stay in the approval_requests row, read only when asked for
+@Entity
+@Table(name = "approval_payloads",
+        uniqueConstraints = @UniqueConstraint(name = "uk_payload_request_kind", columnNames = {"request_id", "kind"}))
+@Getter @Setter
+@ToString
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class ApprovalPayload {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "approval_payload_seq")
+    @SequenceGenerator(name = "approval_payload_seq", sequenceName = "approval_payload_seq", allocationSize = 50)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "request_id", nullable = false)
+    @ToString.Exclude
+    private ApprovalRequest approvalRequest;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "kind", nullable = false, length = 16)
+    private payloadKind kind;
+
+    @Convert(converter = PayloadConverter.class)
+    @Column(name = "content", nullable = false, columnDefinition = "LONGBLOB")
+    @ToString.Exclude
+    private String content;
+}
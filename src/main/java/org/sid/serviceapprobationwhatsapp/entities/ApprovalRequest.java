@@ -3,35 +3,68 @@ package org.sid.serviceapprobationwhatsapp.entities;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
-import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.LazyGroup;
+import org.hibernate.annotations.Type;
 import org.sid.serviceapprobationwhatsapp.enums.statut;
+import org.sid.serviceapprobationwhatsapp.ids.BinaryUuidType;
+import org.sid.serviceapprobationwhatsapp.ids.UuidV7Id;
+import org.sid.serviceapprobationwhatsapp.payload.PayloadConverter;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "approval_requests")
-@Data
+// Listing indexes, all ending in the (request_time_stamp, id) keyset.
+// One active request per origin object: decided rows have a NULL active flag, and NULLs never collide in a unique index
+@Table(name = "approval_requests",
+        uniqueConstraints = @UniqueConstraint(name = "uq_approval_active_object",
+                columnNames = {"origin", "demande_type", "demande_id", "active"}),
+        indexes = {
+                @Index(name = "idx_approval_time_id", columnList = "request_time_stamp, id"),
+                @Index(name = "idx_approval_decision_time_id", columnList = "decision, request_time_stamp, id"),
+                @Index(name = "idx_approval_origin_type_time_id", columnList = "origin, demande_type, request_time_stamp, id")
+        })
+// No equals/hashCode and no associations or LOBs in toString: logging a request never triggers a load
+@Getter @Setter
+@ToString
 @NoArgsConstructor @AllArgsConstructor
 @Builder
 public class ApprovalRequest {
-    @Id @GeneratedValue(strategy = GenerationType.UUID)
+    // Time-ordered UUIDv7 kept as BINARY(16), the API still sees the canonical string
+    @Id @UuidV7Id
+    @Type(BinaryUuidType.class)
+    @Column(length = 16)
     private String id;
 
-    @Column(name = "demande_type", nullable = false)
+    // Lengths keep the composite indexes below InnoDB's 3072-byte key limit under utf8mb4 (4 bytes per character):
+    // uq_approval_active_object is 64+64+128 chars = 1024 bytes + 1, idx_approval_origin_type_time_id 512 + 8 + 16 bytes
+    @Column(name = "demande_type", nullable = false, length = 64)
     private String objectType;
 
-    @Column(name = "demande_id", nullable = false)
+    @Column(name = "demande_id", nullable = false, length = 128)
     private String objectId;
 
-    @Lob @Column(columnDefinition = "Text")
+    // Lazy through bytecode enhancement (hibernate-enhance-maven-plugin), only read and decoded on demand.
+    // Encoded by PayloadConverter, null when the payload was spilled to approval_payloads (see PayloadStore)
+    @Basic(fetch = FetchType.LAZY) @LazyGroup("data")
+    @Convert(converter = PayloadConverter.class)
+    @Column(columnDefinition = "BLOB")
+    @ToString.Exclude
     private String data;
 
+    @Column(name = "origin", length = 64)
     private String origin;
 
-    @ElementCollection
-    private List<String> approvers;
+    @OneToMany(mappedBy = "approvalRequest", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OrderBy("position")
+    @ToString.Exclude
+    @Builder.Default
+    private List<ApproverAssignment> assignments = new ArrayList<>();
 
     @Column(name = "demandeur", nullable = false)
     private String demandeur;
@@ -40,15 +73,28 @@ public class ApprovalRequest {
 
     private String callbackUrl;
 
-    @Lob @Column(columnDefinition = "Text")
+    @Basic(fetch = FetchType.LAZY) @LazyGroup("metadata")
+    @Convert(converter = PayloadConverter.class)
+    @Column(columnDefinition = "BLOB")
+    @ToString.Exclude
     private String metadata;
 
+    @OneToMany(mappedBy = "approvalRequest", cascade = CascadeType.ALL, orphanRemoval = true)
+    @ToString.Exclude
+    @Builder.Default
+    private List<ApprovalPayload> payloads = new ArrayList<>();
+
     @Enumerated(EnumType.STRING)
     private statut decision;
 
+    // TRUE until approved or rejected, then NULL (MariaDB has no partial indexes)
+    private Boolean active;
+
+    @Column(name = "request_time_stamp")
     private LocalDateTime requestTimeStamp;
 
     @OneToMany(mappedBy = "approvalRequest")
+    @ToString.Exclude
     private List<ApprovalOTP> approvalOTPs;
 
     @Version
@@ -0,0 +1,60 @@
+package org.sid.serviceapprobationwhatsapp.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.sid.serviceapprobationwhatsapp.enums.approverStatut;
+import org.sid.serviceapprobationwhatsapp.enums.statut;
+
+import java.time.LocalDateTime;
+
+// One approver of one request, with their own progress and decision
+@Entity
+@Table(name = "approver_assignments",
+        indexes = @Index(name = "idx_assignment_phone_state", columnList = "phone_number, state, request_id"),
+        uniqueConstraints = @UniqueConstraint(name = "uk_assignment_request_phone", columnNames = {"request_id", "phone_number"}))
+@Getter @Setter
+@ToString
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class ApproverAssignment {
+
+    @Id
+    // Pooled like approval_otp_seq, a registration inserts all of its assignments in one batch
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "approver_assignment_seq")
+    @SequenceGenerator(name = "approver_assignment_seq", sequenceName = "approver_assignment_seq", allocationSize = 50)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "request_id", nullable = false)
+    @ToString.Exclude
+    private ApprovalRequest approvalRequest;
+
+    @Column(name = "phone_number", nullable = false, length = 32)
+    private String phoneNumber;
+
+    // Order in the registration payload, carried by the button tokens
+    @Column(name = "position", nullable = false)
+    private int position;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false, length = 16)
+    private approverStatut state;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "decision", length = 16)
+    private statut decision;
+
+    @Column(name = "notified_at")
+    private LocalDateTime notifiedAt;
+
+    @Column(name = "verified_at")
+    private LocalDateTime verifiedAt;
+
+    @Column(name = "decided_at")
+    private LocalDateTime decidedAt;
+}
@@ -0,0 +1,67 @@
+package org.sid.serviceapprobationwhatsapp.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.sid.serviceapprobationwhatsapp.enums.callbackStatut;
+
+import java.time.LocalDateTime;
+
+// One decision to report to an origin system's callbackUrl
+@Entity
+@Table(name = "callback_deliveries",
+        indexes = {
+                @Index(name = "idx_callback_status_next_attempt", columnList = "status, next_attempt_at"),
+                @Index(name = "idx_callback_claim_token", columnList = "claim_token")
+        })
+@Data
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class CallbackDelivery {
+
+    @Id
+    // Pooled like approval_otp_seq
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "callback_delivery_seq")
+    @SequenceGenerator(name = "callback_delivery_seq", sequenceName = "callback_delivery_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "approval_id", nullable = false)
+    private String approvalId;
+
+    @Column(name = "callback_url", nullable = false, length = 2048)
+    private String callbackUrl;
+
+    // Lower-cased host of callbackUrl, the unit of the per-host concurrency limit
+    @Column(name = "host", nullable = false)
+    private String host;
+
+    // One decision event, built at enqueue time; batched POSTs send several of these in one array
+    @Lob @Column(name = "payload", columnDefinition = "Text", nullable = false)
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private callbackStatut status;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    // Set by the claim that moved the row to SENDING, lets a worker find exactly the rows it won
+    @Column(name = "claim_token", length = 36)
+    private String claimToken;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Due time while PENDING, lease expiry while SENDING
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "delivered_at")
+    private LocalDateTime deliveredAt;
+}
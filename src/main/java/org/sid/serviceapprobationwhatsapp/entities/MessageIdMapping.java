@@ -0,0 +1,35 @@
+package org.sid.serviceapprobationwhatsapp.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Outbound WhatsApp message id -> approval it belongs to, kept for the lifetime of the approval
+@Entity
+@Table(name = "message_id_mappings",
+        indexes = {
+                @Index(name = "idx_message_mapping_approval", columnList = "approval_id"),
+                @Index(name = "idx_message_mapping_expires_at", columnList = "expires_at")
+        })
+@Data
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class MessageIdMapping {
+
+    @Id
+    @Column(name = "message_id", length = 128)
+    private String messageId;
+
+    @Column(name = "approval_id", nullable = false)
+    private String approvalId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,29 @@
+package org.sid.serviceapprobationwhatsapp.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Right to issue the next OTP for a phone, held by one worker on any node while it calls the provider
+@Entity
+@Table(name = "otp_issue_claims")
+@Data
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class OtpIssueClaim {
+
+    @Id
+    @Column(name = "phone_number", length = 32)
+    private String phoneNumber;
+
+    @Column(name = "claim_token", nullable = false, length = 36)
+    private String claimToken;
+
+    // Lease: a claim left behind by a crashed worker can be taken over once this is past
+    @Column(name = "claimed_until", nullable = false)
+    private LocalDateTime claimedUntil;
+}
@@ -0,0 +1,72 @@
+package org.sid.serviceapprobationwhatsapp.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.sid.serviceapprobationwhatsapp.enums.outboxStatut;
+import org.sid.serviceapprobationwhatsapp.enums.outboxType;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "outbox_messages",
+        indexes = {
+                @Index(name = "idx_outbox_status_next_attempt", columnList = "status, next_attempt_at"),
+                @Index(name = "idx_outbox_claim_token", columnList = "claim_token")
+        })
+@Data
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class OutboxMessage {
+
+    @Id
+    // Pooled like approval_otp_seq, a verified OTP session queues its approval messages in one batch
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_message_seq")
+    @SequenceGenerator(name = "outbox_message_seq", sequenceName = "outbox_message_seq", allocationSize = 50)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false)
+    private outboxType type;
+
+    @Column(name = "recipient_number", nullable = false)
+    private String recipientNumber;
+
+    // Set for APPROVAL and COMMENT sends, used to store the messageId mapping once sent
+    @Column(name = "approval_id")
+    private String approvalId;
+
+    // Graph API request body, built at enqueue time
+    @Lob @Column(name = "payload", columnDefinition = "Text", nullable = false)
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private outboxStatut status;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    // Set by the claim that moved the row to SENDING, outcomes are only written back under the same token
+    @Column(name = "claim_token", length = 36)
+    private String claimToken;
+
+    // WhatsApp message id returned by the Graph API
+    @Column(name = "message_id")
+    private String messageId;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Due time while PENDING, lease expiry while SENDING
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+}
@@ -0,0 +1,26 @@
+package org.sid.serviceapprobationwhatsapp.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Shared idempotency tier: inbound WhatsApp message ids already handled by any node
+@Entity
+@Table(name = "processed_webhook_messages",
+        indexes = @Index(name = "idx_processed_webhook_processed_at", columnList = "processed_at"))
+@Data
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class ProcessedWebhookMessage {
+
+    @Id
+    @Column(name = "message_id", length = 128)
+    private String messageId;
+
+    @Column(name = "processed_at", nullable = false)
+    private LocalDateTime processedAt;
+}
@@ -0,0 +1,33 @@
+package org.sid.serviceapprobationwhatsapp.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Idempotency-Key of a /register call and the approval it created, kept for the retention window
+@Entity
+@Table(name = "registration_idempotency_keys",
+        indexes = @Index(name = "idx_registration_key_created_at", columnList = "created_at"))
+@Data
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class RegistrationIdempotencyKey {
+
+    @Id
+    @Column(name = "idempotency_key", length = 128)
+    private String idempotencyKey;
+
+    @Column(name = "approval_id", nullable = false, length = 36)
+    private String approvalId;
+
+    // SHA-256 of the request body, a key reused for a different request is refused
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,32 @@
+package org.sid.serviceapprobationwhatsapp.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Approver who recently passed an OTP check, bound to the verification that opened it
+@Entity
+@Table(name = "trusted_sessions",
+        indexes = @Index(name = "idx_trusted_session_expires_at", columnList = "expires_at"))
+@Data
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class TrustedSession {
+
+    @Id
+    @Column(name = "phone_number", length = 32)
+    private String phoneNumber;
+
+    @Column(name = "verification_sid", nullable = false)
+    private String verificationSid;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,9 @@
+package org.sid.serviceapprobationwhatsapp.enums;
+
+public enum callbackStatut {
+    PENDING,
+    SENDING,
+    DELIVERED,
+    // Out of attempts or refused by the origin system, kept for inspection and manual replay
+    DEAD
+}
@@ -0,0 +1,9 @@
+package org.sid.serviceapprobationwhatsapp.enums;
+
+public enum outboxType {
+    OTP,
+    OTP_RESEND,
+    TRY_AGAIN,
+    APPROVAL,
+    COMMENT
+}
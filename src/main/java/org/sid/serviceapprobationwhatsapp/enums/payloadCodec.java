@@ -0,0 +1,6 @@
+package org.sid.serviceapprobationwhatsapp.enums;
+
+public enum payloadCodec {
+    RAW,
+    DEFLATE
+}
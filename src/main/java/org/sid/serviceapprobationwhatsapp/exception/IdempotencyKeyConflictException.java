@@ -0,0 +1,18 @@
+package org.sid.serviceapprobationwhatsapp.exception;
+
+// An Idempotency-Key reused, within its retention window, with a request body that differs from the original one
+public class IdempotencyKeyConflictException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String idempotencyKey;
+
+    public IdempotencyKeyConflictException(String idempotencyKey) {
+        super("Idempotency-Key " + idempotencyKey + " was already used for a different request");
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+}
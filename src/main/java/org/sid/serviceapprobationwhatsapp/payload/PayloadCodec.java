@@ -0,0 +1,103 @@
+package org.sid.serviceapprobationwhatsapp.payload;
+
+import org.sid.serviceapprobationwhatsapp.enums.payloadCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stored payload format: one header byte naming the codec, then the body.
+ * Decoding follows the header, so switching {@code payload.codec} never strands existing rows.
+ */
+@Component
+public class PayloadCodec {
+
+    private static final byte RAW = 0;
+    private static final byte DEFLATE = 1;
+
+    private final payloadCodec codec;
+    private final int compressMinBytes;
+    private final int level;
+
+    public PayloadCodec(@Value("${payload.codec:deflate}") String codec,
+                        @Value("${payload.compress-min-bytes:512}") int compressMinBytes,
+                        @Value("${payload.deflate-level:6}") int level) {
+        this.codec = payloadCodec.valueOf(codec.trim().toUpperCase());
+        this.compressMinBytes = compressMinBytes;
+        this.level = level;
+    }
+
+    public byte[] encode(String payload) {
+        byte[] raw = payload.getBytes(StandardCharsets.UTF_8);
+        if (codec == payloadCodec.DEFLATE && raw.length >= compressMinBytes) {
+            byte[] deflated = deflate(raw);
+            // Already-compact payloads can grow, those stay raw
+            if (deflated.length < raw.length) {
+                return withHeader(DEFLATE, deflated);
+            }
+        }
+        return withHeader(RAW, raw);
+    }
+
+    public String decode(byte[] stored) {
+        if (stored.length == 0) {
+            return "";
+        }
+        byte[] body = Arrays.copyOfRange(stored, 1, stored.length);
+        return switch (stored[0]) {
+            case RAW -> new String(body, StandardCharsets.UTF_8);
+            case DEFLATE -> new String(inflate(body), StandardCharsets.UTF_8);
+            default -> throw new IllegalStateException("Unknown payload codec header " + stored[0]);
+        };
+    }
+
+    private byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] deflated) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(deflated);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(deflated.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int read = inflater.inflate(buffer);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated deflate payload");
+                }
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt deflate payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] withHeader(byte header, byte[] body) {
+        byte[] stored = new byte[body.length + 1];
+        stored[0] = header;
+        System.arraycopy(body, 0, stored, 1, body.length);
+        return stored;
+    }
+}
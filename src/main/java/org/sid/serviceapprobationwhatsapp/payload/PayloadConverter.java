@@ -0,0 +1,27 @@
+package org.sid.serviceapprobationwhatsapp.payload;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.springframework.stereotype.Component;
+
+// JSON text <-> encoded bytes. On lazy attributes it only runs when the attribute is actually read.
+@Converter
+@Component
+public class PayloadConverter implements AttributeConverter<String, byte[]> {
+
+    private final PayloadCodec payloadCodec;
+
+    public PayloadConverter(PayloadCodec payloadCodec) {
+        this.payloadCodec = payloadCodec;
+    }
+
+    @Override
+    public byte[] convertToDatabaseColumn(String payload) {
+        return payload == null ? null : payloadCodec.encode(payload);
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] stored) {
+        return stored == null ? null : payloadCodec.decode(stored);
+    }
+}
@@ -1,21 +1,99 @@
 package org.sid.serviceapprobationwhatsapp.repositories;
 
+import jakarta.persistence.LockModeType;
 import org.sid.serviceapprobationwhatsapp.entities.ApprovalOTP;
+import org.sid.serviceapprobationwhatsapp.entities.ApprovalRequest;
 import org.sid.serviceapprobationwhatsapp.enums.otpStatut;
+import org.sid.serviceapprobationwhatsapp.enums.statut;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 public interface ApprovalOtpRepository extends JpaRepository<ApprovalOTP, Long> {
 
+    // Retires the phone's other sessions once a new OTP is recorded, the new verification's rows are kept
     @Modifying
-    @Query("UPDATE ApprovalOTP a SET a.status = :newStatus WHERE a.recipientNumber = :phoneNumber AND a.status = :oldStatus")
-    void updateStatusByPhoneNumber(@Param("phoneNumber") String phoneNumber,
-                                   @Param("oldStatus") otpStatut oldStatus,
-                                   @Param("newStatus") otpStatut newStatus);
+    @Query("UPDATE ApprovalOTP a SET a.status = :newStatus WHERE a.recipientNumber = :phoneNumber AND a.status = :oldStatus " +
+            "AND a.verificationSid <> :verificationSid")
+    int updateStatusOfOtherSessions(@Param("phoneNumber") String phoneNumber,
+                                    @Param("verificationSid") String verificationSid,
+                                    @Param("oldStatus") otpStatut oldStatus,
+                                    @Param("newStatus") otpStatut newStatus);
     // Custom query method to find the most recent pending OTP for a given phone number
+    // The request is fetched too: callers read it after the persistence context is gone
+    @EntityGraph(ApprovalOTP.WITH_REQUEST)
     Optional<ApprovalOTP> findTopByRecipientNumberAndStatusOrderByCreatedAtDesc(String phoneNumber, otpStatut status);
+
+    boolean existsByVerificationSidAndApprovalRequest_Id(String verificationSid, String approvalRequestId);
+
+    // Every still-pending row of one OTP session (rows sharing a verification), locked for the status change
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @EntityGraph(ApprovalOTP.WITH_REQUEST)
+    @Query("SELECT a FROM ApprovalOTP a WHERE a.recipientNumber = :phoneNumber AND a.verificationSid = :verificationSid AND a.status = :status")
+    List<ApprovalOTP> findSessionForUpdate(@Param("phoneNumber") String phoneNumber,
+                                           @Param("verificationSid") String verificationSid,
+                                           @Param("status") otpStatut status);
+
+    @Modifying
+    @Query("UPDATE ApprovalOTP a SET a.status = :to WHERE a.recipientNumber = :phoneNumber AND a.verificationSid = :verificationSid AND a.status = :from")
+    int transitionSession(@Param("phoneNumber") String phoneNumber,
+                          @Param("verificationSid") String verificationSid,
+                          @Param("from") otpStatut from,
+                          @Param("to") otpStatut to);
+
+    // Undecided approvals this phone was asked to verify for but never did, they ride along on the next OTP
+    @Query("SELECT DISTINCT a.approvalRequest FROM ApprovalOTP a " +
+            "WHERE a.recipientNumber = :phoneNumber AND a.status IN :statuses AND a.createdAt > :since " +
+            "AND a.approvalRequest.decision = :undecided " +
+            "AND NOT EXISTS (SELECT 1 FROM ApprovalOTP v WHERE v.recipientNumber = :phoneNumber " +
+            "AND v.approvalRequest = a.approvalRequest AND v.status = :approved)")
+    List<ApprovalRequest> findUnverifiedApprovals(@Param("phoneNumber") String phoneNumber,
+                                                  @Param("statuses") List<otpStatut> statuses,
+                                                  @Param("undecided") statut undecided,
+                                                  @Param("approved") otpStatut approved,
+                                                  @Param("since") LocalDateTime since);
+
+    // Compare-and-set status change, 0 when another attempt already moved the OTP on
+    @Modifying
+    @Query("UPDATE ApprovalOTP a SET a.status = :to WHERE a.otpId = :id AND a.status = :from")
+    int transition(@Param("id") Long id, @Param("from") otpStatut from, @Param("to") otpStatut to);
+
+    @Modifying
+    @Query("UPDATE ApprovalOTP a SET a.status = :to WHERE a.otpId IN :ids AND a.status = :from")
+    int transitionAll(@Param("ids") List<Long> ids, @Param("from") otpStatut from, @Param("to") otpStatut to);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT a FROM ApprovalOTP a WHERE a.otpId IN :ids AND a.status = :status")
+    List<ApprovalOTP> findByIdsAndStatusForUpdate(@Param("ids") List<Long> ids, @Param("status") otpStatut status);
+
+    // [otpId, expiration] pairs, to rebuild the expiry wheel without loading the entities
+    @Query("SELECT a.otpId, a.expiration FROM ApprovalOTP a WHERE a.status = :status")
+    List<Object[]> findIdAndExpirationByStatus(@Param("status") otpStatut status);
+
+    // One statement per wrong code: parallel attempts queue on the row lock and each adds its own increment,
+    // the one reaching maxAttempts denies the OTP. status is assigned first because MariaDB evaluates SET
+    // left to right, so the CASE must see the counter before the increment
+    @Modifying
+    @Query("UPDATE ApprovalOTP a SET " +
+            "a.status = CASE WHEN a.invalidattempts + 1 >= :maxAttempts THEN :denied ELSE a.status END, " +
+            "a.invalidattempts = a.invalidattempts + 1 " +
+            "WHERE a.otpId = :id AND a.status = :pending")
+    int recordFailedAttempt(@Param("id") Long id,
+                            @Param("pending") otpStatut pending,
+                            @Param("denied") otpStatut denied,
+                            @Param("maxAttempts") int maxAttempts);
+
+    // Read back in the transaction of recordFailedAttempt, which still holds the row lock
+    @Query("SELECT a.invalidattempts FROM ApprovalOTP a WHERE a.otpId = :id")
+    int findInvalidAttempts(@Param("id") Long id);
+
+    @EntityGraph(ApprovalOTP.WITH_REQUEST)
+    List<ApprovalOTP> findByStatusAndExpirationAfter(otpStatut status, LocalDateTime now);
 }
@@ -0,0 +1,12 @@
+package org.sid.serviceapprobationwhatsapp.repositories;
+
+import org.sid.serviceapprobationwhatsapp.entities.ApprovalPayload;
+import org.sid.serviceapprobationwhatsapp.enums.payloadKind;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Optional;
+
+public interface ApprovalPayloadRepository extends JpaRepository<ApprovalPayload, Long> {
+
+    Optional<ApprovalPayload> findByApprovalRequest_IdAndKind(String approvalRequestId, payloadKind kind);
+}
@@ -1,20 +1,45 @@
 package org.sid.serviceapprobationwhatsapp.repositories;
 
+import org.sid.serviceapprobationwhatsapp.dto.CallbackTarget;
 import org.sid.serviceapprobationwhatsapp.entities.ApprovalRequest;
 import org.sid.serviceapprobationwhatsapp.enums.statut;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.util.List;
+import java.util.Collection;
+import java.util.Optional;
+
 
 @Repository
 public interface ApprovalRequestRepository extends JpaRepository<ApprovalRequest, String> {
 
-    @Query("SELECT ar FROM ApprovalRequest ar WHERE :phoneNumber MEMBER OF ar.approvers AND ar.decision IN :statuses")
-    List<ApprovalRequest> findByApproverPhoneNumberAndDecisionIn(@Param("phoneNumber") String phoneNumber, @Param("statuses") List<statut> status);
+    // Approver lookups live in ApproverAssignmentRepository
+
+    // Decision change without loading the row, the version bump keeps optimistic locking meaningful for other writers.
+    // active goes to NULL with a final decision, which frees the object for a new request.
+    // A decided request is never touched again: 0 when it is unknown or already in one of the final statuses
+    @Modifying
+    @Query("UPDATE ApprovalRequest a SET a.decision = :decision, a.active = :active, a.version = a.version + 1 " +
+            "WHERE a.id = :id AND a.decision NOT IN :finals")
+    int updateDecision(@Param("id") String id,
+                       @Param("decision") statut decision,
+                       @Param("active") Boolean active,
+                       @Param("finals") Collection<statut> finals);
+
+    // The undecided request already registered for this origin object, if any
+    @Query("SELECT a.id FROM ApprovalRequest a WHERE a.origin = :origin AND a.objectType = :objectType " +
+            "AND a.objectId = :objectId AND a.active = true")
+    Optional<String> findActiveId(@Param("origin") String origin,
+                                  @Param("objectType") String objectType,
+                                  @Param("objectId") String objectId);
+
+    @Query("SELECT new org.sid.serviceapprobationwhatsapp.dto.CallbackTarget(a.callbackUrl, a.objectType, a.objectId, a.origin) " +
+            "FROM ApprovalRequest a WHERE a.id = :id")
+    Optional<CallbackTarget> findCallbackTarget(@Param("id") String id);
 
-    @Query("SELECT ar FROM ApprovalRequest ar WHERE :approver MEMBER OF ar.approvers")
-    List<ApprovalRequest> findByApproversContaining(@Param("approver") String approver);
+    @Query("SELECT a.decision FROM ApprovalRequest a WHERE a.id = :id")
+    Optional<statut> findDecisionById(@Param("id") String id);
 }
@@ -0,0 +1,57 @@
+package org.sid.serviceapprobationwhatsapp.repositories;
+
+import org.sid.serviceapprobationwhatsapp.dto.ApprovalDecisionView;
+import org.sid.serviceapprobationwhatsapp.entities.ApproverAssignment;
+import org.sid.serviceapprobationwhatsapp.enums.approverStatut;
+import org.sid.serviceapprobationwhatsapp.enums.statut;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface ApproverAssignmentRepository extends JpaRepository<ApproverAssignment, Long> {
+
+    // Answered from the (request_id, phone_number) unique index
+    @Query("SELECT COUNT(a) > 0 FROM ApproverAssignment a WHERE a.approvalRequest.id = :approvalId AND a.phoneNumber = :phoneNumber")
+    boolean isApprover(@Param("approvalId") String approvalId, @Param("phoneNumber") String phoneNumber);
+
+    // The token of a button click names a position, the click must come from the approver holding it
+    @Query("SELECT COUNT(a) > 0 FROM ApproverAssignment a WHERE a.approvalRequest.id = :approvalId " +
+            "AND a.position = :position AND a.phoneNumber = :phoneNumber")
+    boolean isApproverAt(@Param("approvalId") String approvalId, @Param("position") int position, @Param("phoneNumber") String phoneNumber);
+
+    @Query("SELECT a.position FROM ApproverAssignment a WHERE a.approvalRequest.id = :approvalId AND a.phoneNumber = :phoneNumber")
+    Optional<Integer> findPosition(@Param("approvalId") String approvalId, @Param("phoneNumber") String phoneNumber);
+
+    // Newest first, projected so neither the request LOBs nor its associations are read
+    @Query("SELECT new org.sid.serviceapprobationwhatsapp.dto.ApprovalDecisionView(r.id, r.objectType, r.objectId, r.decision, r.requestTimeStamp) " +
+            "FROM ApproverAssignment a JOIN a.approvalRequest r WHERE a.phoneNumber = :phoneNumber AND r.decision IN :statuses " +
+            "ORDER BY r.requestTimeStamp DESC")
+    List<ApprovalDecisionView> findDecisionViewsByPhoneNumberAndDecisionIn(@Param("phoneNumber") String phoneNumber, @Param("statuses") List<statut> statuses);
+
+    // Requests an approver still has to act on, served by the (phone_number, state) index
+    @Query("SELECT a.approvalRequest.id FROM ApproverAssignment a WHERE a.phoneNumber = :phoneNumber AND a.state IN :states")
+    List<String> findRequestIdsByPhoneNumberAndStateIn(@Param("phoneNumber") String phoneNumber, @Param("states") List<approverStatut> states);
+
+    @Modifying
+    @Query("UPDATE ApproverAssignment a SET a.state = :state, a.notifiedAt = :at " +
+            "WHERE a.approvalRequest.id = :approvalId AND a.phoneNumber = :phoneNumber AND a.state = :from")
+    int markNotified(@Param("approvalId") String approvalId, @Param("phoneNumber") String phoneNumber,
+                     @Param("from") approverStatut from, @Param("state") approverStatut state, @Param("at") LocalDateTime at);
+
+    @Modifying
+    @Query("UPDATE ApproverAssignment a SET a.state = :state, a.verifiedAt = :at " +
+            "WHERE a.approvalRequest.id IN :approvalIds AND a.phoneNumber = :phoneNumber AND a.state <> :state AND a.state <> :decided")
+    int markVerified(@Param("approvalIds") List<String> approvalIds, @Param("phoneNumber") String phoneNumber,
+                     @Param("state") approverStatut state, @Param("decided") approverStatut decided, @Param("at") LocalDateTime at);
+
+    @Modifying
+    @Query("UPDATE ApproverAssignment a SET a.state = :state, a.decision = :decision, a.decidedAt = :at " +
+            "WHERE a.approvalRequest.id = :approvalId AND a.phoneNumber = :phoneNumber")
+    int markDecided(@Param("approvalId") String approvalId, @Param("phoneNumber") String phoneNumber,
+                    @Param("state") approverStatut state, @Param("decision") statut decision, @Param("at") LocalDateTime at);
+}
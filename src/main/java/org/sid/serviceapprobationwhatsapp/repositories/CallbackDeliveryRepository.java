@@ -0,0 +1,67 @@
+package org.sid.serviceapprobationwhatsapp.repositories;
+
+import org.sid.serviceapprobationwhatsapp.entities.CallbackDelivery;
+import org.sid.serviceapprobationwhatsapp.enums.callbackStatut;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface CallbackDeliveryRepository extends JpaRepository<CallbackDelivery, Long> {
+
+    // [id, callbackUrl, host] of due PENDING entries and of SENDING entries whose lease ran out
+    @Query("SELECT c.id, c.callbackUrl, c.host FROM CallbackDelivery c " +
+            "WHERE c.status IN :statuses AND c.nextAttemptAt <= :now ORDER BY c.id")
+    List<Object[]> findDue(@Param("statuses") Collection<callbackStatut> statuses,
+                           @Param("now") LocalDateTime now,
+                           Pageable pageable);
+
+    // Compare-and-set claim of a whole batch, rows another worker or node took in between are simply skipped
+    @Modifying
+    @Query("UPDATE CallbackDelivery c SET c.status = :sending, c.claimToken = :token, c.nextAttemptAt = :leaseUntil " +
+            "WHERE c.id IN :ids AND c.status IN :statuses AND c.nextAttemptAt <= :now")
+    int claim(@Param("ids") Collection<Long> ids,
+              @Param("statuses") Collection<callbackStatut> statuses,
+              @Param("sending") callbackStatut sending,
+              @Param("token") String token,
+              @Param("now") LocalDateTime now,
+              @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    List<CallbackDelivery> findByClaimTokenAndStatus(String claimToken, callbackStatut status);
+
+    @Modifying
+    @Query("UPDATE CallbackDelivery c SET c.status = :delivered, c.deliveredAt = :at, c.lastError = null " +
+            "WHERE c.claimToken = :token AND c.status = :sending")
+    int markDelivered(@Param("token") String token,
+                      @Param("sending") callbackStatut sending,
+                      @Param("delivered") callbackStatut delivered,
+                      @Param("at") LocalDateTime at);
+
+    // Failure write-back, guarded like markDelivered: a batch whose lease ran out and was claimed again is left alone.
+    // Entries out of attempts (or all of them when the failure is permanent) go DEAD
+    @Modifying
+    @Query("UPDATE CallbackDelivery c SET c.status = :dead, c.attempts = c.attempts + 1, c.lastError = :error " +
+            "WHERE c.claimToken = :token AND c.status = :sending AND (:permanent = true OR c.attempts + 1 >= :maxAttempts)")
+    int markDead(@Param("token") String token,
+                 @Param("sending") callbackStatut sending,
+                 @Param("dead") callbackStatut dead,
+                 @Param("permanent") boolean permanent,
+                 @Param("maxAttempts") int maxAttempts,
+                 @Param("error") String error);
+
+    @Modifying
+    @Query("UPDATE CallbackDelivery c SET c.status = :pending, c.attempts = c.attempts + 1, c.lastError = :error, " +
+            "c.nextAttemptAt = :nextAttemptAt WHERE c.claimToken = :token AND c.status = :sending")
+    int reschedule(@Param("token") String token,
+                   @Param("sending") callbackStatut sending,
+                   @Param("pending") callbackStatut pending,
+                   @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                   @Param("error") String error);
+
+    long countByStatus(callbackStatut status);
+}
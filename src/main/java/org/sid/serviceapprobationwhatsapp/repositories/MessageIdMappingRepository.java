@@ -0,0 +1,20 @@
+package org.sid.serviceapprobationwhatsapp.repositories;
+
+import org.sid.serviceapprobationwhatsapp.entities.MessageIdMapping;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface MessageIdMappingRepository extends JpaRepository<MessageIdMapping, String> {
+
+    @Query("SELECT m.approvalId FROM MessageIdMapping m WHERE m.messageId = :messageId AND m.expiresAt > :now")
+    Optional<String> findLiveApprovalId(@Param("messageId") String messageId, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM MessageIdMapping m WHERE m.expiresAt <= :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -0,0 +1,34 @@
+package org.sid.serviceapprobationwhatsapp.repositories;
+
+import org.sid.serviceapprobationwhatsapp.entities.OtpIssueClaim;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+
+public interface OtpIssueClaimRepository extends JpaRepository<OtpIssueClaim, String> {
+
+    // Returns 1 when the phone had no claim and this caller now holds it
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO otp_issue_claims (phone_number, claim_token, claimed_until) " +
+            "VALUES (:phoneNumber, :token, :claimedUntil)",
+            nativeQuery = true)
+    int insertIfAbsent(@Param("phoneNumber") String phoneNumber,
+                       @Param("token") String token,
+                       @Param("claimedUntil") LocalDateTime claimedUntil);
+
+    // Takes over a claim whose lease ran out (its holder died mid-issue)
+    @Modifying
+    @Query("UPDATE OtpIssueClaim c SET c.claimToken = :token, c.claimedUntil = :claimedUntil " +
+            "WHERE c.phoneNumber = :phoneNumber AND c.claimedUntil < :now")
+    int takeOverExpired(@Param("phoneNumber") String phoneNumber,
+                        @Param("token") String token,
+                        @Param("claimedUntil") LocalDateTime claimedUntil,
+                        @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM OtpIssueClaim c WHERE c.phoneNumber = :phoneNumber AND c.claimToken = :token")
+    int release(@Param("phoneNumber") String phoneNumber, @Param("token") String token);
+}
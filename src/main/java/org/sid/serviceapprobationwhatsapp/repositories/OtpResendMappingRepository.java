@@ -2,11 +2,24 @@ package org.sid.serviceapprobationwhatsapp.repositories;
 
 import org.sid.serviceapprobationwhatsapp.entities.OtpResendMapping;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 public interface OtpResendMappingRepository extends JpaRepository<OtpResendMapping, String> {
 
     Optional<OtpResendMapping> findByMappingId(String mappingId);
 
+    @Modifying
+    @Query("DELETE FROM OtpResendMapping m WHERE m.mappingId IN :ids AND m.expiration <= :now")
+    int deleteExpired(@Param("ids") List<String> ids, @Param("now") LocalDateTime now);
+
+    // [mappingId, expiration] pairs, to rebuild the expiry wheel
+    @Query("SELECT m.mappingId, m.expiration FROM OtpResendMapping m")
+    List<Object[]> findIdAndExpiration();
+
 }
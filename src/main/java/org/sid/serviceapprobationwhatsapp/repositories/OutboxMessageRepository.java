@@ -0,0 +1,84 @@
+package org.sid.serviceapprobationwhatsapp.repositories;
+
+import org.sid.serviceapprobationwhatsapp.entities.OutboxMessage;
+import org.sid.serviceapprobationwhatsapp.enums.outboxStatut;
+import org.sid.serviceapprobationwhatsapp.enums.outboxType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, Long> {
+
+    // PENDING entries that are due, plus SENDING entries whose lease ran out (worker died mid-send)
+    @Query("SELECT o.id FROM OutboxMessage o WHERE o.status IN :statuses AND o.nextAttemptAt <= :now ORDER BY o.id")
+    List<Long> findDueIds(@Param("statuses") Collection<outboxStatut> statuses,
+                          @Param("now") LocalDateTime now,
+                          Pageable pageable);
+
+    // Compare-and-set claim of the whole due set, rows another worker or node took in between are simply skipped
+    @Modifying
+    @Query("UPDATE OutboxMessage o SET o.status = :sending, o.claimToken = :token, o.nextAttemptAt = :leaseUntil " +
+            "WHERE o.id IN :ids AND o.status IN :statuses AND o.nextAttemptAt <= :now")
+    int claim(@Param("ids") Collection<Long> ids,
+              @Param("statuses") Collection<outboxStatut> statuses,
+              @Param("sending") outboxStatut sending,
+              @Param("token") String token,
+              @Param("now") LocalDateTime now,
+              @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    List<OutboxMessage> findByClaimTokenAndStatusOrderById(String claimToken, outboxStatut status);
+
+    // Outcome write-backs are guarded by the claim: an entry whose lease ran out and was claimed again is left alone.
+    // Finished entries of the redacted types lose their payload, it is never sent again
+    @Modifying
+    @Query("UPDATE OutboxMessage o SET o.status = :sent, o.attempts = o.attempts + 1, o.messageId = :messageId, " +
+            "o.sentAt = :at, o.lastError = null, " +
+            "o.payload = CASE WHEN o.type IN :redactedTypes THEN :redacted ELSE o.payload END " +
+            "WHERE o.id = :id AND o.claimToken = :token AND o.status = :sending")
+    int markSent(@Param("id") Long id,
+                 @Param("token") String token,
+                 @Param("sending") outboxStatut sending,
+                 @Param("sent") outboxStatut sent,
+                 @Param("messageId") String messageId,
+                 @Param("at") LocalDateTime at,
+                 @Param("redactedTypes") Collection<outboxType> redactedTypes,
+                 @Param("redacted") String redacted);
+
+    // Out of attempts, or the failure is permanent: FAILED
+    @Modifying
+    @Query("UPDATE OutboxMessage o SET o.status = :failed, o.attempts = o.attempts + 1, o.lastError = :error, " +
+            "o.payload = CASE WHEN o.type IN :redactedTypes THEN :redacted ELSE o.payload END " +
+            "WHERE o.id = :id AND o.claimToken = :token AND o.status = :sending " +
+            "AND (:permanent = true OR o.attempts + 1 >= :maxAttempts)")
+    int markFailed(@Param("id") Long id,
+                   @Param("token") String token,
+                   @Param("sending") outboxStatut sending,
+                   @Param("failed") outboxStatut failed,
+                   @Param("permanent") boolean permanent,
+                   @Param("maxAttempts") int maxAttempts,
+                   @Param("error") String error,
+                   @Param("redactedTypes") Collection<outboxType> redactedTypes,
+                   @Param("redacted") String redacted);
+
+    @Modifying
+    @Query("UPDATE OutboxMessage o SET o.status = :pending, o.attempts = o.attempts + 1, o.lastError = :error, " +
+            "o.nextAttemptAt = :nextAttemptAt WHERE o.id = :id AND o.claimToken = :token AND o.status = :sending")
+    int reschedule(@Param("id") Long id,
+                   @Param("token") String token,
+                   @Param("sending") outboxStatut sending,
+                   @Param("pending") outboxStatut pending,
+                   @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                   @Param("error") String error);
+
+    // Finished entries, nextAttemptAt is the lease of their last claim
+    @Modifying
+    @Query("DELETE FROM OutboxMessage o WHERE o.status IN :statuses AND o.nextAttemptAt < :before")
+    int deleteFinished(@Param("statuses") Collection<outboxStatut> statuses,
+                       @Param("before") LocalDateTime before);
+}
@@ -0,0 +1,22 @@
+package org.sid.serviceapprobationwhatsapp.repositories;
+
+import org.sid.serviceapprobationwhatsapp.entities.ProcessedWebhookMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+
+public interface ProcessedWebhookMessageRepository extends JpaRepository<ProcessedWebhookMessage, String> {
+
+    // Returns 1 when this node is the first to see the message, 0 when it was already recorded
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO processed_webhook_messages (message_id, processed_at) VALUES (:messageId, :processedAt)",
+            nativeQuery = true)
+    int insertIfAbsent(@Param("messageId") String messageId, @Param("processedAt") LocalDateTime processedAt);
+
+    @Modifying
+    @Query("DELETE FROM ProcessedWebhookMessage p WHERE p.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,19 @@
+package org.sid.serviceapprobationwhatsapp.repositories;
+
+import org.sid.serviceapprobationwhatsapp.entities.TrustedSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface TrustedSessionRepository extends JpaRepository<TrustedSession, String> {
+
+    Optional<TrustedSession> findByPhoneNumberAndExpiresAtAfter(String phoneNumber, LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM TrustedSession t WHERE t.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
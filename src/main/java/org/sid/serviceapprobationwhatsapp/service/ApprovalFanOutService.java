@@ -0,0 +1,15 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+import org.sid.serviceapprobationwhatsapp.dto.ApproverNotificationResult;
+import org.sid.serviceapprobationwhatsapp.entities.ApprovalRequest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public interface ApprovalFanOutService {
+
+    List<ApproverNotificationResult> notifyApprovers(ApprovalRequest approvalRequest, List<String> approvers);
+    // Runs in the background: each approver is contacted once for all of their approvals of the batch
+    CompletableFuture<List<ApproverNotificationResult>> notifyBatch(Map<String, List<ApprovalRequest>> approvalsByApprover);
+}
@@ -0,0 +1,15 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+import org.sid.serviceapprobationwhatsapp.dto.ApprovalFilter;
+import org.sid.serviceapprobationwhatsapp.dto.ApprovalPage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface ApprovalQueryService {
+
+    // Newest first, seeking from the cursor of the previous page; IllegalArgumentException on a malformed cursor
+    ApprovalPage list(ApprovalFilter filter, String cursor, int limit);
+    // Every matching approval as one JSON array, written row by row
+    void export(ApprovalFilter filter, OutputStream out) throws IOException;
+}
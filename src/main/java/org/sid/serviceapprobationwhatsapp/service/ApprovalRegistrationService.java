@@ -0,0 +1,20 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.sid.serviceapprobationwhatsapp.dto.ApprovalRequestDTO;
+import org.sid.serviceapprobationwhatsapp.dto.BatchItemResult;
+import org.sid.serviceapprobationwhatsapp.dto.RegistrationResult;
+import org.sid.serviceapprobationwhatsapp.entities.ApprovalRequest;
+
+import java.util.List;
+
+public interface ApprovalRegistrationService {
+
+    // A new, unsaved Pending request with its payloads and approver assignments
+    ApprovalRequest build(ApprovalRequestDTO approvalRequestDTO) throws JsonProcessingException;
+    // Creates the request, or replays the one created earlier under the same Idempotency-Key (may be null)
+    // or still active for the same origin object. IdempotencyKeyConflictException when the key was used for another request
+    RegistrationResult register(ApprovalRequestDTO approvalRequestDTO, String idempotencyKey) throws JsonProcessingException;
+    // Validates and persists every entry, then notifies each approver once for all of their new approvals (in the background)
+    List<BatchItemResult> registerBatch(List<ApprovalRequestDTO> approvalRequestDTOs);
+}
@@ -1,5 +1,7 @@
 package org.sid.serviceapprobationwhatsapp.service;
 
+import org.sid.serviceapprobationwhatsapp.dto.ApprovalDecisionView;
+import org.sid.serviceapprobationwhatsapp.dto.OtpChallenge;
 import org.sid.serviceapprobationwhatsapp.entities.ApprovalRequest;
 import org.sid.serviceapprobationwhatsapp.enums.statut;
 
@@ -7,10 +9,14 @@ import java.util.List;
 
 
 public interface ApprovalService {
-    void updateStatus(String id, statut decision);
-    void sendOtpAndCreateApprovalOTP(ApprovalRequest approvalRequest, String phoneNumber);
+    // False when nothing changed: unknown approval, or one already approved or rejected (the first decision stands)
+    boolean updateStatus(String id, statut decision);
+    // Queues the envoieotp prompt with the new OTP; returns its challenge, null when the approval joined the approver's open OTP
+    OtpChallenge sendOtpAndCreateApprovalOTP(ApprovalRequest approvalRequest, String phoneNumber);
+    // One code for several approvals of the same approver (batch registration)
+    OtpChallenge sendOtpAndCreateApprovalOTP(List<ApprovalRequest> approvalRequests, String phoneNumber);
     ApprovalRequest saveApprovalRequest(ApprovalRequest approvalRequest);
     ApprovalRequest getApproval(String approvalId);
     void updateComment(String approvalId, String comment);
-    ApprovalRequest findPendingCommentApproval(String phoneNumber, List<statut> status);
+    ApprovalDecisionView findPendingCommentApproval(String phoneNumber, List<statut> status);
 }
@@ -0,0 +1,16 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+import org.sid.serviceapprobationwhatsapp.enums.statut;
+
+import java.util.List;
+
+public interface ApproverAssignmentService {
+
+    boolean isApprover(String approvalId, String phoneNumber);
+    boolean isApproverAt(String approvalId, int position, String phoneNumber);
+    // Order of the approver in the request, 0 when unknown
+    int positionOf(String approvalId, String phoneNumber);
+    void markNotified(String approvalId, String phoneNumber);
+    void markVerified(List<String> approvalIds, String phoneNumber);
+    void markDecided(String approvalId, String phoneNumber, statut decision);
+}
@@ -0,0 +1,8 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+import org.sid.serviceapprobationwhatsapp.dto.WebhookEvent;
+
+public interface ButtonPayloadRouter {
+
+    void route(WebhookEvent.ButtonClick click);
+}
@@ -0,0 +1,12 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+import org.sid.serviceapprobationwhatsapp.dto.ButtonToken;
+
+import java.util.Optional;
+
+public interface ButtonTokenService {
+
+    String encode(String approvalId, int approverIndex);
+    // Empty when the token is malformed, forged or expired
+    Optional<ButtonToken> decode(String token);
+}
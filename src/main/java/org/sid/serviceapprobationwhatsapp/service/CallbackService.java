@@ -0,0 +1,10 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+import org.sid.serviceapprobationwhatsapp.dto.DecisionEvent;
+
+public interface CallbackService {
+
+    // Joins the caller's transaction, no-op when the approval has no callbackUrl
+    void enqueueDecision(DecisionEvent event, String callbackUrl);
+    int dispatchDueDeliveries();
+}
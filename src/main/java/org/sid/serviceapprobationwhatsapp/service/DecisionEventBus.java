@@ -0,0 +1,16 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+import org.sid.serviceapprobationwhatsapp.dto.DecisionEvent;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+public interface DecisionEventBus {
+
+    // Delivered once the caller's transaction commits, right away when there is none
+    void publishAfterCommit(DecisionEvent event);
+    // Null filters match everything
+    SseEmitter subscribe(String origin, String objectType);
+    // Completes on the approval's next decision, at once when it is already approved or rejected
+    DeferredResult<ResponseEntity<?>> await(String approvalId, long timeoutSeconds);
+}
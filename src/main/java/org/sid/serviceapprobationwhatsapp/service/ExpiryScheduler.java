@@ -0,0 +1,13 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+import org.sid.serviceapprobationwhatsapp.dto.DueExpirations;
+
+import java.time.LocalDateTime;
+
+public interface ExpiryScheduler {
+
+    void scheduleOtp(Long otpId, LocalDateTime expiration);
+    void scheduleResendMapping(String mappingId, LocalDateTime expiration);
+    // Timers that fell due since the previous call
+    DueExpirations advance();
+}
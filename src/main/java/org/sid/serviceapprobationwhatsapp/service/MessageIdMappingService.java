@@ -4,7 +4,6 @@ public interface MessageIdMappingService {
 
     void storeMapping(String messageId, String approvalId);
     void clearMapping();
-    void logAllMappings();
     int getMapSize();
     String getApprovalId(String messageId) ;
 
@@ -0,0 +1,7 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+public interface OtpExpiryService {
+
+    // Expires the OTPs and resend mappings that fell due, returns how many rows were affected
+    int expireDue();
+}
@@ -4,7 +4,8 @@ import org.springframework.http.ResponseEntity;
 
 public interface OtpMessage {
 
-    ResponseEntity<String> sendOtpMessage(String recipientNumber);
+    // code is null when the OTP provider delivers it itself (Twilio SMS)
+    ResponseEntity<String> sendOtpMessage(String recipientNumber, String code);
     ResponseEntity<String> resendOtpMessage(String recipientNumber, String mappingId);
     ResponseEntity<String> sendTryAgain(String recipientNumber);
 }
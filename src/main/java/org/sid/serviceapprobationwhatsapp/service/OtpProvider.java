@@ -0,0 +1,10 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+import org.sid.serviceapprobationwhatsapp.dto.OtpChallenge;
+import org.sid.serviceapprobationwhatsapp.dto.PendingOtp;
+
+public interface OtpProvider {
+
+    OtpChallenge issue(String phoneNumber);
+    boolean verify(PendingOtp otp, String code);
+}
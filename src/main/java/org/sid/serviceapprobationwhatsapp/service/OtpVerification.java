@@ -4,5 +4,8 @@ import org.springframework.http.ResponseEntity;
 
 public interface OtpVerification {
 
+    // Code typed in the WhatsApp conversation
     ResponseEntity<?> processOtpVerification(String phoneNumber, String messageBody);
+    // Code submitted through the REST API for a given approval
+    ResponseEntity<?> verifyForApproval(String approvalId, String phoneNumber, String code);
 }
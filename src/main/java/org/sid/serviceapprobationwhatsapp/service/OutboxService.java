@@ -0,0 +1,13 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+import org.sid.serviceapprobationwhatsapp.entities.OutboxMessage;
+import org.sid.serviceapprobationwhatsapp.enums.outboxType;
+import org.springframework.http.ResponseEntity;
+
+public interface OutboxService {
+
+    OutboxMessage enqueue(outboxType type, String recipientNumber, String approvalId, String payload);
+    ResponseEntity<String> accepted(OutboxMessage message);
+    int dispatchDueMessages();
+    int purgeFinishedMessages();
+}
@@ -0,0 +1,12 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+import org.sid.serviceapprobationwhatsapp.entities.ApprovalRequest;
+import org.sid.serviceapprobationwhatsapp.enums.payloadKind;
+
+public interface PayloadStore {
+
+    // Puts the JSON inline on the request, or in a spilled side row saved with it (cascade)
+    void attach(ApprovalRequest approvalRequest, payloadKind kind, String json);
+    // The JSON wherever it was stored, null when the request has none
+    String read(String approvalId, payloadKind kind);
+}
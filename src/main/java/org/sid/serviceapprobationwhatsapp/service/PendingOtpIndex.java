@@ -0,0 +1,14 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+import org.sid.serviceapprobationwhatsapp.dto.PendingOtp;
+import org.sid.serviceapprobationwhatsapp.entities.ApprovalOTP;
+
+import java.util.Optional;
+
+public interface PendingOtpIndex {
+
+    // Latest pending OTP for the phone, from memory when this node has it, from the DB otherwise
+    Optional<PendingOtp> findPending(String phoneNumber);
+    void put(ApprovalOTP otp);
+    void invalidate(String phoneNumber);
+}
@@ -0,0 +1,10 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+public interface TrustedSessionService {
+
+    // Opened after a successful OTP check, no-op when trusted sessions are disabled
+    void open(String phoneNumber, String verificationSid);
+    boolean isTrusted(String phoneNumber);
+    // True when a live session was revoked
+    boolean revoke(String phoneNumber);
+}
@@ -0,0 +1,11 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+import org.sid.serviceapprobationwhatsapp.dto.WebhookEvent;
+
+import java.io.IOException;
+import java.util.List;
+
+public interface WebhookEventParser {
+
+    List<WebhookEvent> parse(byte[] body) throws IOException;
+}
@@ -0,0 +1,8 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+public interface WebhookIdempotencyService {
+
+    // True the first time a message id is seen within the retention window, false for a redelivery
+    boolean markIfFirst(String messageId);
+    void release(String messageId);
+}
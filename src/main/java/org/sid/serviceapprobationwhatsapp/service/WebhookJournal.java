@@ -0,0 +1,9 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+import java.io.IOException;
+
+public interface WebhookJournal {
+
+    // Returns once the payload is durable on disk, processing happens asynchronously
+    void append(byte[] payload) throws IOException;
+}
@@ -0,0 +1,6 @@
+package org.sid.serviceapprobationwhatsapp.service;
+
+public interface WebhookProcessor {
+
+    void process(byte[] payload);
+}
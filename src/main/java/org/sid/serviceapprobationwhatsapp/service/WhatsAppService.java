@@ -4,9 +4,7 @@ import org.sid.serviceapprobationwhatsapp.entities.ApprovalRequest;
 import org.springframework.http.ResponseEntity;
 
 public interface WhatsAppService {
-    ResponseEntity<String> sendMessageWithInteractiveButtons(ApprovalRequest approvalRequest);
-
-    String extractContextIdFromResponse(String jsonResponse);
+    ResponseEntity<String> sendMessageWithInteractiveButtons(ApprovalRequest approvalRequest, String recipientNumber);
 
     void sendCommentaire(String approvalId,
                          String recipientNumber
@@ -0,0 +1,191 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import org.sid.serviceapprobationwhatsapp.dto.ApproverNotificationResult;
+import org.sid.serviceapprobationwhatsapp.entities.ApprovalRequest;
+import org.sid.serviceapprobationwhatsapp.service.ApprovalFanOutService;
+import org.sid.serviceapprobationwhatsapp.service.ApprovalService;
+import org.sid.serviceapprobationwhatsapp.service.ApproverAssignmentService;
+import org.sid.serviceapprobationwhatsapp.service.TrustedSessionService;
+import org.sid.serviceapprobationwhatsapp.service.WhatsAppService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Contacts every approver of a request concurrently (OTP prompt + verification code, or the approval
+ * message directly for approvers in a trusted session),
+ * at most {@code fanout.concurrency} at a time, and reports who was reached.
+ * Batches go through the same path from the task executor, one OTP per approver for all of their approvals.
+ * An approver not reached within {@code fanout.approver-timeout-ms} is reported as timed out, but its worker is
+ * never interrupted: past the provider call it is recording the OTP or queueing messages, and the provider's own
+ * HTTP timeouts already bound the call itself.
+ */
+@Service
+public class ApprovalFanOutServiceImpl implements ApprovalFanOutService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApprovalFanOutServiceImpl.class);
+
+    @Value("${fanout.concurrency:8}")
+    private int concurrency;
+
+    @Value("${fanout.approver-timeout-ms:15000}")
+    private long approverTimeoutMs;
+
+    private final ApprovalService approvalService;
+    private final TaskExecutor fanOutExecutor;
+    private final TrustedSessionService trustedSessionService;
+    private final WhatsAppService whatsAppService;
+    private final ApproverAssignmentService approverAssignmentService;
+    private final TaskExecutor taskExecutor;
+    private final TaskScheduler taskScheduler;
+
+    public ApprovalFanOutServiceImpl(ApprovalService approvalService,
+                                     @Qualifier("fanOutExecutor") TaskExecutor fanOutExecutor,
+                                     @Qualifier("taskExecutor") TaskExecutor taskExecutor,
+                                     @Qualifier("taskScheduler") TaskScheduler taskScheduler,
+                                     TrustedSessionService trustedSessionService,
+                                     WhatsAppService whatsAppService,
+                                     ApproverAssignmentService approverAssignmentService) {
+        this.approvalService = approvalService;
+        this.fanOutExecutor = fanOutExecutor;
+        this.taskExecutor = taskExecutor;
+        this.taskScheduler = taskScheduler;
+        this.trustedSessionService = trustedSessionService;
+        this.whatsAppService = whatsAppService;
+        this.approverAssignmentService = approverAssignmentService;
+    }
+
+    @Override
+    public List<ApproverNotificationResult> notifyApprovers(ApprovalRequest approvalRequest, List<String> approvers) {
+        // The same number listed twice would otherwise get two OTPs
+        return fanOut(new LinkedHashSet<>(approvers), approverPhoneNumber -> notifyApprover(approvalRequest, approverPhoneNumber),
+                (approverPhoneNumber, e) -> failure("approval " + approvalRequest.getId(), approverPhoneNumber, e));
+    }
+
+    @Override
+    public CompletableFuture<List<ApproverNotificationResult>> notifyBatch(Map<String, List<ApprovalRequest>> approvalsByApprover) {
+        return CompletableFuture.supplyAsync(() -> fanOut(approvalsByApprover.keySet(),
+                approverPhoneNumber -> notifyApprover(approvalsByApprover.get(approverPhoneNumber), approverPhoneNumber),
+                (approverPhoneNumber, e) -> failure(approvalsByApprover.get(approverPhoneNumber).size() + " batch approval(s)", approverPhoneNumber, e)),
+                taskExecutor);
+    }
+
+    private List<ApproverNotificationResult> fanOut(Iterable<String> approvers,
+                                                    Function<String, ApproverNotificationResult> notify,
+                                                    BiFunction<String, Throwable, ApproverNotificationResult> onFailure) {
+        Semaphore permits = new Semaphore(Math.max(1, concurrency));
+        Map<String, FutureTask<ApproverNotificationResult>> tasks = new LinkedHashMap<>();
+
+        for (String approverPhoneNumber : approvers) {
+            permits.acquireUninterruptibly();
+            FutureTask<ApproverNotificationResult> task = new FutureTask<>(() -> notify.apply(approverPhoneNumber));
+            ScheduledFuture<?> timeout = null;
+            try {
+                // Stops the wait, not the worker
+                timeout = taskScheduler.schedule(() -> task.cancel(false), Instant.now().plusMillis(approverTimeoutMs));
+                ScheduledFuture<?> scheduledTimeout = timeout;
+                // The permit is held until the worker is really done, a timed out call
+                // keeps counting against the limit instead of letting one more in
+                fanOutExecutor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        scheduledTimeout.cancel(false);
+                        permits.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+                permits.release();
+                // Rejected by the executor: reported as this approver's failure, not as a timeout
+                FutureTask<ApproverNotificationResult> rejected = new FutureTask<>(() -> {
+                    throw e;
+                });
+                rejected.run();
+                tasks.put(approverPhoneNumber, rejected);
+                continue;
+            }
+            tasks.put(approverPhoneNumber, task);
+        }
+
+        List<ApproverNotificationResult> results = new ArrayList<>(tasks.size());
+        tasks.forEach((approverPhoneNumber, task) -> results.add(await(approverPhoneNumber, task, onFailure)));
+        return results;
+    }
+
+    private ApproverNotificationResult await(String approverPhoneNumber,
+                                             FutureTask<ApproverNotificationResult> task,
+                                             BiFunction<String, Throwable, ApproverNotificationResult> onFailure) {
+        try {
+            return task.get();
+        } catch (CancellationException e) {
+            return onFailure.apply(approverPhoneNumber, new TimeoutException());
+        } catch (ExecutionException e) {
+            return onFailure.apply(approverPhoneNumber, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.cancel(false);
+            return onFailure.apply(approverPhoneNumber, e);
+        }
+    }
+
+    private ApproverNotificationResult notifyApprover(ApprovalRequest approvalRequest, String approverPhoneNumber) {
+        // Verified recently: no new OTP, the approval message goes out directly
+        if (trustedSessionService.isTrusted(approverPhoneNumber)) {
+            whatsAppService.sendMessageWithInteractiveButtons(approvalRequest, approverPhoneNumber);
+            logger.info("Approver {} is in a trusted session, OTP skipped for approval {}", approverPhoneNumber, approvalRequest.getId());
+            approverAssignmentService.markNotified(approvalRequest.getId(), approverPhoneNumber);
+            return ApproverNotificationResult.reached(approverPhoneNumber);
+        }
+        // The envoieotp prompt is queued with the OTP rows, nothing to send when the approval joined an open code
+        approvalService.sendOtpAndCreateApprovalOTP(approvalRequest, approverPhoneNumber);
+        approverAssignmentService.markNotified(approvalRequest.getId(), approverPhoneNumber);
+        return ApproverNotificationResult.reached(approverPhoneNumber);
+    }
+
+    private ApproverNotificationResult notifyApprover(List<ApprovalRequest> approvalRequests, String approverPhoneNumber) {
+        if (trustedSessionService.isTrusted(approverPhoneNumber)) {
+            for (ApprovalRequest approvalRequest : approvalRequests) {
+                whatsAppService.sendMessageWithInteractiveButtons(approvalRequest, approverPhoneNumber);
+                approverAssignmentService.markNotified(approvalRequest.getId(), approverPhoneNumber);
+            }
+            logger.info("Approver {} is in a trusted session, OTP skipped for {} batch approval(s)", approverPhoneNumber, approvalRequests.size());
+            return ApproverNotificationResult.reached(approverPhoneNumber);
+        }
+        // One code for the whole batch, verifying it releases every approval it covers
+        approvalService.sendOtpAndCreateApprovalOTP(approvalRequests, approverPhoneNumber);
+        approvalRequests.forEach(approvalRequest -> approverAssignmentService.markNotified(approvalRequest.getId(), approverPhoneNumber));
+        return ApproverNotificationResult.reached(approverPhoneNumber);
+    }
+
+    private ApproverNotificationResult failure(String subject, String approverPhoneNumber, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        String error = cause instanceof TimeoutException ? "Timed out" : cause.getMessage();
+        logger.error("Could not reach approver {} for {}: {}", approverPhoneNumber, subject, error);
+        return ApproverNotificationResult.failed(approverPhoneNumber, error);
+    }
+}
@@ -0,0 +1,171 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+import org.sid.serviceapprobationwhatsapp.dto.ApprovalFilter;
+import org.sid.serviceapprobationwhatsapp.dto.ApprovalListItem;
+import org.sid.serviceapprobationwhatsapp.dto.ApprovalPage;
+import org.sid.serviceapprobationwhatsapp.ids.UuidV7;
+import org.sid.serviceapprobationwhatsapp.service.ApprovalQueryService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Approval listing for dashboards and exports.
+ * Pages seek on (requestTimeStamp, id) instead of using OFFSET, so page N costs the same as page 1,
+ * and only the filters actually given end up in the WHERE clause so MariaDB can pick the matching
+ * composite index. Rows are read as projections: no payload LOBs, nothing held in the persistence context.
+ */
+@Service
+public class ApprovalQueryServiceImpl implements ApprovalQueryService {
+
+    private static final String SELECT = "SELECT new org.sid.serviceapprobationwhatsapp.dto.ApprovalListItem(" +
+            "a.id, a.objectType, a.objectId, a.origin, a.demandeur, a.decision, a.requestTimeStamp) FROM ApprovalRequest a";
+    private static final String ORDER = " ORDER BY a.requestTimeStamp DESC, a.id DESC";
+
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final int maxPageSize;
+    private final int exportFetchSize;
+    private final int exportFlushEvery;
+
+    public ApprovalQueryServiceImpl(EntityManager entityManager,
+                                    ObjectMapper objectMapper,
+                                    @Value("${approval.query.max-page-size:500}") int maxPageSize,
+                                    @Value("${approval.export.fetch-size:1000}") int exportFetchSize,
+                                    @Value("${approval.export.flush-every:500}") int exportFlushEvery) {
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.maxPageSize = maxPageSize;
+        this.exportFetchSize = exportFetchSize;
+        this.exportFlushEvery = Math.max(1, exportFlushEvery);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ApprovalPage list(ApprovalFilter filter, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        StringBuilder where = where(filter, parameters);
+
+        if (cursor != null && !cursor.isBlank()) {
+            Cursor position = Cursor.decode(cursor);
+            append(where, "(a.requestTimeStamp < :cursorTime OR (a.requestTimeStamp = :cursorTime AND a.id < :cursorId))");
+            parameters.put("cursorTime", position.requestTimeStamp());
+            parameters.put("cursorId", position.id());
+        }
+
+        TypedQuery<ApprovalListItem> query = query(where, parameters);
+        // One extra row tells whether there is a next page without a COUNT
+        query.setMaxResults(pageSize + 1);
+        List<ApprovalListItem> rows = query.getResultList();
+
+        if (rows.size() <= pageSize) {
+            return new ApprovalPage(rows, null);
+        }
+        List<ApprovalListItem> page = rows.subList(0, pageSize);
+        ApprovalListItem last = page.get(pageSize - 1);
+        return new ApprovalPage(List.copyOf(page), new Cursor(last.requestTimeStamp(), last.id()).encode());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void export(ApprovalFilter filter, OutputStream out) throws IOException {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        TypedQuery<ApprovalListItem> query = query(where(filter, parameters), parameters);
+        // Server-side cursor (useCursorFetch on the JDBC URL): the driver holds fetch-size rows at a time, not the result set
+        query.setHint(HibernateHints.HINT_FETCH_SIZE, exportFetchSize);
+        query.setHint(HibernateHints.HINT_READ_ONLY, true);
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+             Stream<ApprovalListItem> rows = query.getResultStream()) {
+            generator.writeStartArray();
+            int written = 0;
+            for (ApprovalListItem row : (Iterable<ApprovalListItem>) rows::iterator) {
+                generator.writeObject(row);
+                if (++written % exportFlushEvery == 0) {
+                    generator.flush();
+                }
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private TypedQuery<ApprovalListItem> query(StringBuilder where, Map<String, Object> parameters) {
+        TypedQuery<ApprovalListItem> query = entityManager.createQuery(SELECT + where + ORDER, ApprovalListItem.class);
+        parameters.forEach(query::setParameter);
+        return query;
+    }
+
+    private static StringBuilder where(ApprovalFilter filter, Map<String, Object> parameters) {
+        StringBuilder where = new StringBuilder();
+        if (filter.decision() != null) {
+            append(where, "a.decision = :decision");
+            parameters.put("decision", filter.decision());
+        }
+        if (filter.origin() != null) {
+            append(where, "a.origin = :origin");
+            parameters.put("origin", filter.origin());
+        }
+        if (filter.objectType() != null) {
+            append(where, "a.objectType = :objectType");
+            parameters.put("objectType", filter.objectType());
+        }
+        if (filter.approver() != null) {
+            // Served by the (phone_number, state, request_id) assignment index
+            append(where, "EXISTS (SELECT 1 FROM ApproverAssignment s WHERE s.approvalRequest = a AND s.phoneNumber = :approver)");
+            parameters.put("approver", filter.approver());
+        }
+        if (filter.from() != null) {
+            append(where, "a.requestTimeStamp >= :from");
+            parameters.put("from", filter.from());
+        }
+        if (filter.to() != null) {
+            append(where, "a.requestTimeStamp < :to");
+            parameters.put("to", filter.to());
+        }
+        return where;
+    }
+
+    private static void append(StringBuilder where, String condition) {
+        where.append(where.isEmpty() ? " WHERE " : " AND ").append(condition);
+    }
+
+    // Opaque to clients: base64url of "<requestTimeStamp>|<id>" of the last row served
+    private record Cursor(LocalDateTime requestTimeStamp, String id) {
+
+        String encode() {
+            String raw = requestTimeStamp + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('|');
+                String id = raw.substring(separator + 1);
+                if (separator < 0 || !UuidV7.isUuid(id)) {
+                    throw new IllegalArgumentException("Invalid cursor");
+                }
+                return new Cursor(LocalDateTime.parse(raw.substring(0, separator)), id);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.sid.serviceapprobationwhatsapp.dto.ApprovalRequestDTO;
+import org.sid.serviceapprobationwhatsapp.dto.BatchItemResult;
+import org.sid.serviceapprobationwhatsapp.dto.RegistrationResult;
+import org.sid.serviceapprobationwhatsapp.entities.ApprovalRequest;
+import org.sid.serviceapprobationwhatsapp.entities.ApproverAssignment;
+import org.sid.serviceapprobationwhatsapp.entities.RegistrationIdempotencyKey;
+import org.sid.serviceapprobationwhatsapp.enums.approverStatut;
+import org.sid.serviceapprobationwhatsapp.enums.payloadKind;
+import org.sid.serviceapprobationwhatsapp.enums.statut;
+import org.sid.serviceapprobationwhatsapp.exception.IdempotencyKeyConflictException;
+import org.sid.serviceapprobationwhatsapp.repositories.ApprovalRequestRepository;
+import org.sid.serviceapprobationwhatsapp.repositories.RegistrationIdempotencyKeyRepository;
+import org.sid.serviceapprobationwhatsapp.service.ApprovalFanOutService;
+import org.sid.serviceapprobationwhatsapp.service.ApprovalRegistrationService;
+import org.sid.serviceapprobationwhatsapp.service.PayloadStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Builds and persists approval requests, one at a time for /register or by the thousand for /batch.
+ * A batch is persisted in chunks of {@code approval.batch.chunk-size}, one short transaction each, so
+ * Hibernate groups the inserts into JDBC batches (hibernate.jdbc.batch_size, ordered inserts, pooled ids).
+ * A chunk that fails is retried entry by entry so one bad row only costs itself. Approvers are then
+ * contacted once per batch, not once per approval: a single OTP covers all of their new approvals.
+ * Throughput is published as approval.registration.persist / .persisted, tagged mode=single|batch.
+ * <p>
+ * Registration is idempotent twice over: an Idempotency-Key is remembered with the approval it created for
+ * {@code approval.idempotency.retention-minutes}, and the uq_approval_active_object index allows a single
+ * undecided request per (origin, objectType, objectId). Either way a retry gets the original approvalId back
+ * and nobody is notified again.
+ */
+@Service
+public class ApprovalRegistrationServiceImpl implements ApprovalRegistrationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApprovalRegistrationServiceImpl.class);
+
+    private final ApprovalRequestRepository approvalRequestRepository;
+    private final RegistrationIdempotencyKeyRepository registrationIdempotencyKeyRepository;
+    private final ObjectMapper objectMapper;
+    private final PayloadStore payloadStore;
+    private final ApprovalFanOutService approvalFanOutService;
+    private final Validator validator;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int maxItems;
+    private final Duration idempotencyRetention;
+
+    private final Timer singleTimer;
+    private final Timer batchTimer;
+    private final Counter singlePersisted;
+    private final Counter batchPersisted;
+
+    public ApprovalRegistrationServiceImpl(ApprovalRequestRepository approvalRequestRepository,
+                                           RegistrationIdempotencyKeyRepository registrationIdempotencyKeyRepository,
+                                           ObjectMapper objectMapper,
+                                           PayloadStore payloadStore,
+                                           ApprovalFanOutService approvalFanOutService,
+                                           Validator validator,
+                                           EntityManager entityManager,
+                                           TransactionTemplate transactionTemplate,
+                                           @Value("${approval.batch.chunk-size:200}") int chunkSize,
+                                           @Value("${approval.batch.max-items:5000}") int maxItems,
+                                           @Value("${approval.idempotency.retention-minutes:1440}") long idempotencyRetentionMinutes,
+                                           MeterRegistry meterRegistry) {
+        this.approvalRequestRepository = approvalRequestRepository;
+        this.registrationIdempotencyKeyRepository = registrationIdempotencyKeyRepository;
+        this.objectMapper = objectMapper;
+        this.payloadStore = payloadStore;
+        this.approvalFanOutService = approvalFanOutService;
+        this.validator = validator;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxItems = maxItems;
+        this.idempotencyRetention = Duration.ofMinutes(idempotencyRetentionMinutes);
+        this.singleTimer = Timer.builder("approval.registration.persist").tag("mode", "single").register(meterRegistry);
+        this.batchTimer = Timer.builder("approval.registration.persist").tag("mode", "batch").register(meterRegistry);
+        this.singlePersisted = Counter.builder("approval.registration.persisted").tag("mode", "single").register(meterRegistry);
+        this.batchPersisted = Counter.builder("approval.registration.persisted").tag("mode", "batch").register(meterRegistry);
+    }
+
+    @Override
+    public ApprovalRequest build(ApprovalRequestDTO approvalRequestDTO) throws JsonProcessingException {
+        String dataJson = objectMapper.writeValueAsString(approvalRequestDTO.getApprovalData());
+        String metadataJson = objectMapper.writeValueAsString(approvalRequestDTO.getMetadata());
+
+        ApprovalRequest approvalRequest = ApprovalRequest.builder()
+                .objectType(approvalRequestDTO.getObjectType())
+                .objectId(approvalRequestDTO.getObjectId())
+                .origin(approvalRequestDTO.getOrigin())
+                .demandeur(approvalRequestDTO.getDemandeur())
+                .commentaire("")
+                .callbackUrl(approvalRequestDTO.getCallbackUrl())
+                .decision(statut.Pending)
+                .active(Boolean.TRUE)
+                .requestTimeStamp(LocalDateTime.now())
+                .build();
+
+        // Inline when small, spilled to the side table otherwise, compressed either way by the payload codec
+        payloadStore.attach(approvalRequest, payloadKind.DATA, dataJson);
+        payloadStore.attach(approvalRequest, payloadKind.METADATA, metadataJson);
+
+        // One row per distinct approver, the position is the index carried by their button token
+        int position = 0;
+        for (String approverPhoneNumber : new LinkedHashSet<>(approvalRequestDTO.getApprovers())) {
+            approvalRequest.getAssignments().add(ApproverAssignment.builder()
+                    .approvalRequest(approvalRequest)
+                    .phoneNumber(approverPhoneNumber)
+                    .position(position++)
+                    .state(approverStatut.ASSIGNED)
+                    .build());
+        }
+        return approvalRequest;
+    }
+
+    @Override
+    public RegistrationResult register(ApprovalRequestDTO approvalRequestDTO, String idempotencyKey) throws JsonProcessingException {
+        String key = idempotencyKey == null || idempotencyKey.isBlank() ? null : idempotencyKey.trim();
+        String requestHash = key == null ? null : hash(objectMapper.writeValueAsBytes(approvalRequestDTO));
+
+        // Cheap checks first, the constraints below only settle concurrent retries
+        Optional<String> existing = findReplay(key, requestHash, approvalRequestDTO);
+        if (existing.isPresent()) {
+            return replayed(existing.get(), approvalRequestDTO);
+        }
+
+        ApprovalRequest approvalRequest = build(approvalRequestDTO);
+        try {
+            ApprovalRequest saved = singleTimer.record(() -> transactionTemplate.execute(status -> {
+                ApprovalRequest persisted = approvalRequestRepository.save(approvalRequest);
+                if (key != null) {
+                    // Also replaces a key left over from before the retention window
+                    registrationIdempotencyKeyRepository.save(RegistrationIdempotencyKey.builder()
+                            .idempotencyKey(key)
+                            .approvalId(persisted.getId())
+                            .requestHash(requestHash)
+                            .createdAt(LocalDateTime.now())
+                            .build());
+                }
+                // Constraint violations surface here, inside the repository's exception translation
+                approvalRequestRepository.flush();
+                return persisted;
+            }));
+            singlePersisted.increment();
+            return RegistrationResult.created(saved);
+        } catch (DataIntegrityViolationException e) {
+            // Lost the race to a concurrent retry: it committed first, answer with what it created
+            return findReplay(key, requestHash, approvalRequestDTO)
+                    .map(approvalId -> replayed(approvalId, approvalRequestDTO))
+                    .orElseThrow(() -> e);
+        }
+    }
+
+    private Optional<String> findReplay(String key, String requestHash, ApprovalRequestDTO approvalRequestDTO) {
+        if (key != null) {
+            Optional<RegistrationIdempotencyKey> known = registrationIdempotencyKeyRepository.findById(key)
+                    .filter(row -> row.getCreatedAt().isAfter(LocalDateTime.now().minus(idempotencyRetention)));
+            if (known.isPresent()) {
+                if (!known.get().getRequestHash().equals(requestHash)) {
+                    throw new IdempotencyKeyConflictException(key);
+                }
+                return Optional.of(known.get().getApprovalId());
+            }
+        }
+        if (approvalRequestDTO.getOrigin() == null) {
+            return Optional.empty();
+        }
+        return approvalRequestRepository.findActiveId(approvalRequestDTO.getOrigin(), approvalRequestDTO.getObjectType(),
+                approvalRequestDTO.getObjectId());
+    }
+
+    private static RegistrationResult replayed(String approvalId, ApprovalRequestDTO approvalRequestDTO) {
+        logger.info("Registration of {} {} from {} replayed, returning approval {}", approvalRequestDTO.getObjectType(),
+                approvalRequestDTO.getObjectId(), approvalRequestDTO.getOrigin(), approvalId);
+        return RegistrationResult.replayed(approvalId);
+    }
+
+    private static String hash(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${approval.idempotency.purge-interval-ms:600000}")
+    public void purgeExpiredKeys() {
+        Integer purged = transactionTemplate.execute(status ->
+                registrationIdempotencyKeyRepository.deleteCreatedBefore(LocalDateTime.now().minus(idempotencyRetention)));
+        if (purged != null && purged > 0) {
+            logger.debug("Purged {} registration idempotency keys", purged);
+        }
+    }
+
+    @Override
+    public List<BatchItemResult> registerBatch(List<ApprovalRequestDTO> approvalRequestDTOs) {
+        if (approvalRequestDTOs.size() > maxItems) {
+            throw new IllegalArgumentException("A batch holds at most " + maxItems + " approvals, got " + approvalRequestDTOs.size());
+        }
+        BatchItemResult[] results = new BatchItemResult[approvalRequestDTOs.size()];
+
+        // Indexes of the entries that passed validation and could be built, in submission order
+        List<Integer> accepted = new ArrayList<>();
+        for (int index = 0; index < approvalRequestDTOs.size(); index++) {
+            ApprovalRequestDTO approvalRequestDTO = approvalRequestDTOs.get(index);
+            if (approvalRequestDTO == null) {
+                results[index] = BatchItemResult.invalid(index, "Empty entry");
+                continue;
+            }
+            Set<ConstraintViolation<ApprovalRequestDTO>> violations = validator.validate(approvalRequestDTO);
+            if (!violations.isEmpty()) {
+                results[index] = BatchItemResult.invalid(index, violations.stream()
+                        .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining(", ")));
+                continue;
+            }
+            accepted.add(index);
+        }
+
+        long started = System.nanoTime();
+        Map<Integer, ApprovalRequest> created = new LinkedHashMap<>();
+        for (int from = 0; from < accepted.size(); from += chunkSize) {
+            List<Integer> chunk = accepted.subList(from, Math.min(accepted.size(), from + chunkSize));
+            persistChunk(chunk, approvalRequestDTOs, results, created);
+        }
+        long elapsedNanos = System.nanoTime() - started;
+        if (!created.isEmpty()) {
+            batchTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+            batchPersisted.increment(created.size());
+            logger.info("Batch of {} persisted {} approval(s) in {} ms ({} /s)", approvalRequestDTOs.size(), created.size(),
+                    elapsedNanos / 1_000_000, Math.round(created.size() / Math.max(elapsedNanos / 1e9, 1e-9)));
+        }
+
+        notifyApprovers(created.values());
+        return Arrays.asList(results);
+    }
+
+    // The whole chunk in one transaction, then entry by entry if any of it is refused
+    private void persistChunk(List<Integer> chunk, List<ApprovalRequestDTO> approvalRequestDTOs,
+                              BatchItemResult[] results, Map<Integer, ApprovalRequest> created) {
+        Map<Integer, ApprovalRequest> built = new LinkedHashMap<>();
+        for (Integer index : chunk) {
+            try {
+                built.put(index, build(approvalRequestDTOs.get(index)));
+            } catch (JsonProcessingException e) {
+                results[index] = BatchItemResult.invalid(index, "Invalid data format.");
+            }
+        }
+        if (built.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                built.values().forEach(entityManager::persist);
+                entityManager.flush();
+                // Nothing is read back, the context only needs to be empty for the next chunk
+                entityManager.clear();
+            });
+            built.forEach((index, approvalRequest) -> {
+                results[index] = BatchItemResult.created(index, approvalRequest.getId());
+                created.put(index, approvalRequest);
+            });
+            return;
+        } catch (RuntimeException e) {
+            logger.warn("Chunk of {} approvals rolled back ({}), retrying one by one", built.size(), e.getMessage());
+        }
+
+        for (Integer index : built.keySet()) {
+            try {
+                // Rebuilt: the rolled-back instances already carry generated ids and versions
+                ApprovalRequest approvalRequest = build(approvalRequestDTOs.get(index));
+                transactionTemplate.executeWithoutResult(status -> entityManager.persist(approvalRequest));
+                results[index] = BatchItemResult.created(index, approvalRequest.getId());
+                created.put(index, approvalRequest);
+            } catch (DataIntegrityViolationException e) {
+                // The object already has an active request (an earlier batch, or twice in this one)
+                ApprovalRequestDTO approvalRequestDTO = approvalRequestDTOs.get(index);
+                Optional<String> activeId = approvalRequestDTO.getOrigin() == null ? Optional.empty()
+                        : approvalRequestRepository.findActiveId(approvalRequestDTO.getOrigin(), approvalRequestDTO.getObjectType(), approvalRequestDTO.getObjectId());
+                results[index] = activeId.map(approvalId -> BatchItemResult.duplicate(index, approvalId))
+                        .orElseGet(() -> BatchItemResult.failed(index, "Could not be saved."));
+            } catch (Exception e) {
+                logger.error("Batch entry {} could not be saved: {}", index, e.getMessage());
+                results[index] = BatchItemResult.failed(index, "Could not be saved.");
+            }
+        }
+    }
+
+    private void notifyApprovers(Iterable<ApprovalRequest> approvalRequests) {
+        // Grouped by approver, so someone on 500 new approvals gets one OTP rather than 500
+        Map<String, List<ApprovalRequest>> approvalsByApprover = new LinkedHashMap<>();
+        for (ApprovalRequest approvalRequest : approvalRequests) {
+            for (ApproverAssignment assignment : approvalRequest.getAssignments()) {
+                approvalsByApprover.computeIfAbsent(assignment.getPhoneNumber(), key -> new ArrayList<>()).add(approvalRequest);
+            }
+        }
+        if (approvalsByApprover.isEmpty()) {
+            return;
+        }
+        approvalFanOutService.notifyBatch(approvalsByApprover).whenComplete((outcomes, e) -> {
+            if (e != null) {
+                logger.error("Batch notification failed: {}", e.getMessage());
+                return;
+            }
+            long failed = outcomes.stream().filter(outcome -> !outcome.reached()).count();
+            logger.info("Batch notification done: {} approver(s) reached, {} failed", outcomes.size() - failed, failed);
+        });
+    }
+}
@@ -1,82 +1,300 @@
 package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
 
 import jakarta.persistence.EntityNotFoundException;
+import org.sid.serviceapprobationwhatsapp.dto.ApprovalDecisionView;
+import org.sid.serviceapprobationwhatsapp.dto.CallbackTarget;
+import org.sid.serviceapprobationwhatsapp.dto.DecisionEvent;
+import org.sid.serviceapprobationwhatsapp.dto.OtpChallenge;
+import org.sid.serviceapprobationwhatsapp.dto.PendingOtp;
 import org.sid.serviceapprobationwhatsapp.entities.ApprovalOTP;
 import org.sid.serviceapprobationwhatsapp.entities.ApprovalRequest;
 import org.sid.serviceapprobationwhatsapp.enums.otpStatut;
 import org.sid.serviceapprobationwhatsapp.enums.statut;
 import org.sid.serviceapprobationwhatsapp.repositories.ApprovalOtpRepository;
 import org.sid.serviceapprobationwhatsapp.repositories.ApprovalRequestRepository;
+import org.sid.serviceapprobationwhatsapp.repositories.ApproverAssignmentRepository;
+import org.sid.serviceapprobationwhatsapp.repositories.OtpIssueClaimRepository;
 import org.sid.serviceapprobationwhatsapp.service.ApprovalService;
-import org.sid.serviceapprobationwhatsapp.service.TwilioService;
+import org.sid.serviceapprobationwhatsapp.service.CallbackService;
+import org.sid.serviceapprobationwhatsapp.service.DecisionEventBus;
+import org.sid.serviceapprobationwhatsapp.service.ExpiryScheduler;
+import org.sid.serviceapprobationwhatsapp.service.OtpMessage;
+import org.sid.serviceapprobationwhatsapp.service.OtpProvider;
+import org.sid.serviceapprobationwhatsapp.service.PendingOtpIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
+// No class-level transaction: sendOtpAndCreateApprovalOTP must not hold a connection while the OTP provider is called.
+// Issuing is serialized per phone by a claim row (otp_issue_claims), so it holds across nodes and holds no lock during the call.
+// OTPs are coalesced per approver: approvals arriving while a code is open join it (one ApprovalOTP row each,
+// sharing the verification SID), and a fresh code also covers earlier approvals that were never verified.
 @Service
-@Transactional
 public class ApprovalServiceImpl implements ApprovalService {
 
     private final ApprovalRequestRepository approvalRequestRepository;
-    private final TwilioService twilioService;
+    private final ApproverAssignmentRepository approverAssignmentRepository;
+    private final OtpProvider otpProvider;
+    private final OtpMessage otpMessage;
     private final ApprovalOtpRepository approvalOtpRepository;
+    private final OtpIssueClaimRepository otpIssueClaimRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final PendingOtpIndex pendingOtpIndex;
+    private final ExpiryScheduler expiryScheduler;
+    private final CallbackService callbackService;
+    private final DecisionEventBus decisionEventBus;
+    private final boolean coalesceEnabled;
+    private final Duration coalesceMinRemaining;
+    private final Duration approvalLifetime;
+    private final Duration claimLease;
+    private final long claimPollMs;
 
-    public ApprovalServiceImpl(ApprovalRequestRepository approvalRequestRepository, TwilioService twilioService, ApprovalOtpRepository approvalOtpRepository) {
+    public ApprovalServiceImpl(ApprovalRequestRepository approvalRequestRepository, ApproverAssignmentRepository approverAssignmentRepository, OtpProvider otpProvider, OtpMessage otpMessage, ApprovalOtpRepository approvalOtpRepository, OtpIssueClaimRepository otpIssueClaimRepository, TransactionTemplate transactionTemplate, PendingOtpIndex pendingOtpIndex, ExpiryScheduler expiryScheduler, CallbackService callbackService, DecisionEventBus decisionEventBus,
+                               @Value("${otp.coalesce.enabled:true}") boolean coalesceEnabled,
+                               @Value("${otp.coalesce.min-remaining-seconds:60}") long coalesceMinRemainingSeconds,
+                               @Value("${approval.lifetime-hours:168}") long approvalLifetimeHours,
+                               @Value("${otp.issue.claim-seconds:30}") long claimSeconds,
+                               @Value("${otp.issue.claim-poll-ms:100}") long claimPollMs) {
         this.approvalRequestRepository = approvalRequestRepository;
-        this.twilioService = twilioService;
+        this.approverAssignmentRepository = approverAssignmentRepository;
+        this.otpProvider = otpProvider;
+        this.otpMessage = otpMessage;
         this.approvalOtpRepository = approvalOtpRepository;
+        this.otpIssueClaimRepository = otpIssueClaimRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.pendingOtpIndex = pendingOtpIndex;
+        this.expiryScheduler = expiryScheduler;
+        this.callbackService = callbackService;
+        this.decisionEventBus = decisionEventBus;
+        this.coalesceEnabled = coalesceEnabled;
+        this.coalesceMinRemaining = Duration.ofSeconds(coalesceMinRemainingSeconds);
+        this.approvalLifetime = Duration.ofHours(approvalLifetimeHours);
+        this.claimLease = Duration.ofSeconds(claimSeconds);
+        this.claimPollMs = claimPollMs;
     }
 
     private static final Logger logger = LoggerFactory.getLogger(ApprovalServiceImpl.class);
 
+    private static final Set<statut> FINAL_DECISIONS = EnumSet.of(statut.Approuver, statut.Rejeter);
+
     @Override
-    public void updateStatus(String id, statut decision) {
-        ApprovalRequest approvalRequest = approvalRequestRepository.findById(id).orElse(null);
-        if (approvalRequest != null) {
-            approvalRequest.setDecision(decision);
-            approvalRequestRepository.save(approvalRequest);
+    @Transactional
+    public boolean updateStatus(String id, statut decision) {
+        boolean isFinal = FINAL_DECISIONS.contains(decision);
+        if (approvalRequestRepository.updateDecision(id, decision, isFinal ? null : Boolean.TRUE, FINAL_DECISIONS) == 0) {
+            // Also a second click after approve/reject: no second callback, no second event
+            logger.warn("Approval {} unknown or already decided, {} ignored", id, decision);
+            return false;
+        }
+        // Pending is set by the outbox once the approval message is out, only approver decisions are reported
+        if (decision == statut.Pending) {
+            return true;
         }
+        CallbackTarget target = approvalRequestRepository.findCallbackTarget(id).orElseThrow();
+        DecisionEvent event = new DecisionEvent(id, target.origin(), target.objectType(), target.objectId(), decision, LocalDateTime.now());
+        callbackService.enqueueDecision(event, target.callbackUrl());
+        decisionEventBus.publishAfterCommit(event);
+        return true;
+    }
+
+    @Override
+    public OtpChallenge sendOtpAndCreateApprovalOTP(ApprovalRequest approvalRequest, String phoneNumber) {
+        return sendOtpAndCreateApprovalOTP(List.of(approvalRequest), phoneNumber);
     }
 
     @Override
-    public void sendOtpAndCreateApprovalOTP(ApprovalRequest approvalRequest, String phoneNumber) {
+    public OtpChallenge sendOtpAndCreateApprovalOTP(List<ApprovalRequest> approvalRequests, String phoneNumber) {
+        // One issuer per phone at a time, so concurrent approvals for the same approver share a single OTP.
+        // Losers poll: the winner's OTP is joined once recorded, a crashed winner's claim is taken over after its lease
+        long deadline = System.nanoTime() + 2 * claimLease.toNanos();
+        while (true) {
+            if (coalesceEnabled && joinOpenOtp(approvalRequests, phoneNumber)) {
+                return null;
+            }
+            String token = claimIssue(phoneNumber);
+            if (token != null) {
+                try {
+                    return issueOtp(approvalRequests, phoneNumber);
+                } finally {
+                    releaseIssue(phoneNumber, token);
+                }
+            }
+            if (System.nanoTime() > deadline) {
+                throw new RuntimeException("OTP issue for " + phoneNumber + " is still claimed by another worker");
+            }
+            try {
+                Thread.sleep(claimPollMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting to issue an OTP", e);
+            }
+        }
+    }
+
+    // Separate statements, each in its own transaction: an insert and an update on the same row in one
+    // transaction could deadlock two claimers upgrading their shared locks
+    private String claimIssue(String phoneNumber) {
+        String token = UUID.randomUUID().toString();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime claimedUntil = now.plus(claimLease);
+        Integer inserted = transactionTemplate.execute(status ->
+                otpIssueClaimRepository.insertIfAbsent(phoneNumber, token, claimedUntil));
+        if (inserted != null && inserted == 1) {
+            return token;
+        }
+        Integer takenOver = transactionTemplate.execute(status ->
+                otpIssueClaimRepository.takeOverExpired(phoneNumber, token, claimedUntil, now));
+        if (takenOver != null && takenOver == 1) {
+            logger.warn("Took over the expired OTP issue claim of {}", phoneNumber);
+            return token;
+        }
+        return null;
+    }
 
-            Optional<ApprovalOTP> existingOtp = approvalOtpRepository
-                    .findTopByRecipientNumberAndStatusOrderByCreatedAtDesc(phoneNumber, otpStatut.PENDING);
+    private void releaseIssue(String phoneNumber, String token) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> otpIssueClaimRepository.release(phoneNumber, token));
+        } catch (Exception e) {
+            // The lease runs out on its own, waiting issuers are only delayed
+            logger.error("Could not release the OTP issue claim of {}: {}", phoneNumber, e.getMessage());
+        }
+    }
 
-            if (existingOtp.isPresent()) {
-                logger.warn("Pending OTP already exists for phone {}. Not creating a new one.", phoneNumber);
+    // Adds the approvals to the approver's open OTP session, false when there is none worth joining
+    private boolean joinOpenOtp(List<ApprovalRequest> approvalRequests, String phoneNumber) {
+        Optional<PendingOtp> open = pendingOtpIndex.findPending(phoneNumber);
+        if (open.isEmpty() || open.get().expiration().isBefore(LocalDateTime.now().plus(coalesceMinRemaining))) {
+            return false;
+        }
 
+        List<ApprovalOTP> joined = transactionTemplate.execute(status -> {
+            // The lock keeps a concurrent verification from approving the session while we join it,
+            // the joined rows copy the locked row, not the index snapshot, so they carry its current attempts
+            List<ApprovalOTP> locked = approvalOtpRepository.findByIdsAndStatusForUpdate(List.of(open.get().otpId()), otpStatut.PENDING);
+            if (locked.isEmpty()) {
+                return null;
             }
-            try {
-                String verificationSid = twilioService.sendVerificationCode(phoneNumber);
-                logger.info("OTP sent successfully for phone {}", phoneNumber);
+            ApprovalOTP session = locked.get(0);
+            List<ApprovalOTP> rows = new ArrayList<>();
+            for (ApprovalRequest approvalRequest : approvalRequests) {
+                if (!approvalOtpRepository.existsByVerificationSidAndApprovalRequest_Id(session.getVerificationSid(), approvalRequest.getId())) {
+                    rows.add(approvalOtpRepository.save(joinedRow(session, approvalRequest)));
+                }
+            }
+            return rows;
+        });
+        if (joined == null) {
+            return false;
+        }
+        joined.forEach(row -> expiryScheduler.scheduleOtp(row.getOtpId(), row.getExpiration()));
+        logger.info("{} approval(s) joined the open OTP of {}, no new code sent", approvalRequests.size(), phoneNumber);
+        return true;
+    }
 
+    // The first approval owns the code, the others get joined rows on the same verification
+    private OtpChallenge issueOtp(List<ApprovalRequest> approvalRequests, String phoneNumber) {
+        ApprovalRequest approvalRequest = approvalRequests.get(0);
+        Set<String> coveredIds = approvalRequests.stream().map(ApprovalRequest::getId).collect(Collectors.toSet());
+
+        // Phase 1 (no transaction, no connection held): the provider call, a Twilio round trip or a local draw.
+        // The previous code stays valid until the new one is recorded, a failed issue leaves the approver with it
+        OtpChallenge challenge;
+        try {
+            challenge = otpProvider.issue(phoneNumber);
+            logger.info("OTP sent successfully for phone {}", phoneNumber);
+        } catch (Exception e) {
+            logger.error("Error sending OTP: {}", e.getMessage());
+            throw new RuntimeException("Error sending OTP", e);
+        }
+
+        // Phase 2 (short transaction): idempotent finalization keyed on the verification SID, retiring the previous code.
+        // The envoieotp prompt is queued in the same transaction, so a recorded OTP always has its message
+        String verificationSid = challenge.verificationSid();
+        try {
+            List<ApprovalOTP> saved = transactionTemplate.execute(status -> {
+                if (approvalOtpRepository.existsByVerificationSidAndApprovalRequest_Id(verificationSid, approvalRequest.getId())) {
+                    logger.info("ApprovalOTP for verification {} already recorded", verificationSid);
+                    return List.<ApprovalOTP>of();
+                }
                 ApprovalOTP otp = ApprovalOTP.builder()
                         .approvalRequest(approvalRequest)
                         .recipientNumber(phoneNumber)
                         .verificationSid(verificationSid)
+                        .codeHash(challenge.codeHash())
+                        .codeSalt(challenge.codeSalt())
                         .status(otpStatut.PENDING)
                         .createdAt(LocalDateTime.now())
                         .invalidattempts(0)
                         .expiration(LocalDateTime.now().plusMinutes(5))
                         .build();
 
-                approvalOtpRepository.save(otp);
-                logger.info("ApprovalOTP created successfully for phone {}", phoneNumber);
-            } catch (Exception e) {
-                logger.error("Error sending OTP: {}", e.getMessage());
-                throw new RuntimeException("Error sending OTP", e);
+                List<ApprovalOTP> rows = new ArrayList<>();
+                rows.add(approvalOtpRepository.save(otp));
+                approvalRequests.stream().skip(1)
+                        .forEach(other -> rows.add(approvalOtpRepository.save(joinedRow(otp, other))));
+                // Approvals whose earlier OTP lapsed unverified are covered by this one too. DENIED always rides along:
+                // running out of attempts denies the whole session, and its resend link only names one approval
+                List<otpStatut> carriedStatuses = coalesceEnabled
+                        ? List.of(otpStatut.PENDING, otpStatut.EXPIRED, otpStatut.DENIED)
+                        : List.of(otpStatut.DENIED);
+                approvalOtpRepository.findUnverifiedApprovals(phoneNumber, carriedStatuses,
+                                statut.Pending, otpStatut.APPROVED, LocalDateTime.now().minus(approvalLifetime)).stream()
+                        .filter(carried -> !coveredIds.contains(carried.getId()))
+                        .forEach(carried -> rows.add(approvalOtpRepository.save(joinedRow(otp, carried))));
+                approvalOtpRepository.updateStatusOfOtherSessions(phoneNumber, verificationSid, otpStatut.PENDING, otpStatut.EXPIRED);
+                otpMessage.sendOtpMessage(phoneNumber, challenge.code());
+                return rows;
+            });
+            // Published once committed, so the index never serves an OTP that was rolled back
+            if (saved != null && !saved.isEmpty()) {
+                pendingOtpIndex.invalidate(phoneNumber);
+                pendingOtpIndex.put(saved.get(0));
+                saved.forEach(row -> expiryScheduler.scheduleOtp(row.getOtpId(), row.getExpiration()));
+                if (saved.size() > approvalRequests.size()) {
+                    logger.info("OTP for {} also covers {} earlier unverified approval(s)", phoneNumber, saved.size() - approvalRequests.size());
+                }
             }
+            logger.info("ApprovalOTP created successfully for phone {}", phoneNumber);
+        } catch (Exception e) {
+            // Nothing to undo on our side: the unrecorded verification simply expires,
+            // and the approver can get a new code through the resend flow
+            logger.error("OTP {} sent to {} but could not be recorded: {}", verificationSid, phoneNumber, e.getMessage());
+            throw new RuntimeException("Error recording OTP", e);
+        }
+        return challenge;
+    }
+
+    // Same verification, code and deadline as the session row, attempts included so joining never resets them
+    private static ApprovalOTP joinedRow(ApprovalOTP session, ApprovalRequest approvalRequest) {
+        return ApprovalOTP.builder()
+                .approvalRequest(approvalRequest)
+                .recipientNumber(session.getRecipientNumber())
+                .verificationSid(session.getVerificationSid())
+                .codeHash(session.getCodeHash())
+                .codeSalt(session.getCodeSalt())
+                .status(otpStatut.PENDING)
+                .createdAt(LocalDateTime.now())
+                .invalidattempts(session.getInvalidattempts())
+                .expiration(session.getExpiration())
+                .build();
     }
 
     @Override
+    @Transactional
     public ApprovalRequest saveApprovalRequest(ApprovalRequest approvalRequest) {
         try {
             return approvalRequestRepository.save(approvalRequest);
@@ -89,12 +307,15 @@ public class ApprovalServiceImpl implements ApprovalService {
     }
 
     @Override
+    @Transactional(readOnly = true)
     public ApprovalRequest getApproval(String approvalId) {
+        // Only scalar columns are read from it afterwards, approver checks go through the assignments table
         return approvalRequestRepository.findById(approvalId)
                 .orElseThrow(() -> new IllegalArgumentException("Invalid approval ID: " + approvalId));
     }
 
     @Override
+    @Transactional
     public void updateComment(String approvalId, String comment) {
         ApprovalRequest approval = getApproval(approvalId);
         approval.setCommentaire(comment);
@@ -102,12 +323,13 @@ public class ApprovalServiceImpl implements ApprovalService {
     }
 
     @Override
-    public ApprovalRequest findPendingCommentApproval(String phoneNumber, List<statut> status) {
-        List<ApprovalRequest> list = approvalRequestRepository.findByApproverPhoneNumberAndDecisionIn(phoneNumber, status);
+    @Transactional(readOnly = true)
+    public ApprovalDecisionView findPendingCommentApproval(String phoneNumber, List<statut> status) {
+        List<ApprovalDecisionView> list = approverAssignmentRepository.findDecisionViewsByPhoneNumberAndDecisionIn(phoneNumber, status);
 
         // Filter to keep only the rejected and pending approved requests
-        List<ApprovalRequest> pendingOrRejectedList = list.stream()
-                .filter(approvalRequest -> approvalRequest.getDecision() == statut.Pending || approvalRequest.getDecision() == statut.Rejeter)
+        List<ApprovalDecisionView> pendingOrRejectedList = list.stream()
+                .filter(view -> view.decision() == statut.Pending || view.decision() == statut.Rejeter)
                 .toList();
 
         if (pendingOrRejectedList.isEmpty()) {
@@ -0,0 +1,67 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import org.sid.serviceapprobationwhatsapp.enums.approverStatut;
+import org.sid.serviceapprobationwhatsapp.enums.statut;
+import org.sid.serviceapprobationwhatsapp.repositories.ApproverAssignmentRepository;
+import org.sid.serviceapprobationwhatsapp.service.ApproverAssignmentService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Per-approver progress: ASSIGNED -> NOTIFIED -> VERIFIED -> DECIDED, every step a single indexed UPDATE
+@Service
+public class ApproverAssignmentServiceImpl implements ApproverAssignmentService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApproverAssignmentServiceImpl.class);
+
+    private final ApproverAssignmentRepository approverAssignmentRepository;
+
+    public ApproverAssignmentServiceImpl(ApproverAssignmentRepository approverAssignmentRepository) {
+        this.approverAssignmentRepository = approverAssignmentRepository;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public boolean isApprover(String approvalId, String phoneNumber) {
+        return approverAssignmentRepository.isApprover(approvalId, phoneNumber);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public boolean isApproverAt(String approvalId, int position, String phoneNumber) {
+        return approverAssignmentRepository.isApproverAt(approvalId, position, phoneNumber);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public int positionOf(String approvalId, String phoneNumber) {
+        return approverAssignmentRepository.findPosition(approvalId, phoneNumber).orElse(0);
+    }
+
+    @Override
+    @Transactional
+    public void markNotified(String approvalId, String phoneNumber) {
+        approverAssignmentRepository.markNotified(approvalId, phoneNumber, approverStatut.ASSIGNED, approverStatut.NOTIFIED, LocalDateTime.now());
+    }
+
+    @Override
+    @Transactional
+    public void markVerified(List<String> approvalIds, String phoneNumber) {
+        if (approvalIds.isEmpty()) {
+            return;
+        }
+        approverAssignmentRepository.markVerified(approvalIds, phoneNumber, approverStatut.VERIFIED, approverStatut.DECIDED, LocalDateTime.now());
+    }
+
+    @Override
+    @Transactional
+    public void markDecided(String approvalId, String phoneNumber, statut decision) {
+        if (approverAssignmentRepository.markDecided(approvalId, phoneNumber, approverStatut.DECIDED, decision, LocalDateTime.now()) == 0) {
+            logger.warn("No assignment of approval {} for {}, decision {} only recorded on the request", approvalId, phoneNumber, decision);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import org.sid.serviceapprobationwhatsapp.dto.ButtonToken;
+import org.sid.serviceapprobationwhatsapp.dto.WebhookEvent;
+import org.sid.serviceapprobationwhatsapp.entities.ApprovalRequest;
+import org.sid.serviceapprobationwhatsapp.entities.OtpResendMapping;
+import org.sid.serviceapprobationwhatsapp.enums.statut;
+import org.sid.serviceapprobationwhatsapp.service.ApprovalService;
+import org.sid.serviceapprobationwhatsapp.service.ApproverAssignmentService;
+import org.sid.serviceapprobationwhatsapp.service.ButtonPayloadRouter;
+import org.sid.serviceapprobationwhatsapp.service.ButtonTokenService;
+import org.sid.serviceapprobationwhatsapp.service.MessageIdMappingService;
+import org.sid.serviceapprobationwhatsapp.service.OtpResendMappingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Dispatches quick-reply button clicks on their payload prefix:
+ * {@code APPROVE_ / REJECT_ / ATTENTE_<token>} record a decision, {@code RESEND_<mappingId>} issues a new OTP.
+ */
+@Service
+public class ButtonPayloadRouterImpl implements ButtonPayloadRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ButtonPayloadRouterImpl.class);
+
+    private static final String APPROVE = "APPROVE_";
+    private static final String REJECT = "REJECT_";
+    private static final String ATTENTE = "ATTENTE_";
+    private static final String RESEND = "RESEND_";
+    private static final Pattern LEGACY_APPROVAL_ID = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    private final ApprovalService approvalService;
+    private final MessageIdMappingService messageIdMappingService;
+    private final OtpResendMappingService otpResendMappingService;
+    private final ButtonTokenService buttonTokenService;
+    private final ApproverAssignmentService approverAssignmentService;
+
+    public ButtonPayloadRouterImpl(ApprovalService approvalService,
+                                   MessageIdMappingService messageIdMappingService,
+                                   OtpResendMappingService otpResendMappingService,
+                                   ButtonTokenService buttonTokenService,
+                                   ApproverAssignmentService approverAssignmentService) {
+        this.approvalService = approvalService;
+        this.messageIdMappingService = messageIdMappingService;
+        this.otpResendMappingService = otpResendMappingService;
+        this.buttonTokenService = buttonTokenService;
+        this.approverAssignmentService = approverAssignmentService;
+    }
+
+    @Override
+    public void route(WebhookEvent.ButtonClick click) {
+        String payload = click.payload();
+        logger.info("Button clicked: {}, Payload: {}", click.text(), payload);
+
+        int separator = payload.indexOf('_');
+        String prefix = separator < 0 ? "" : payload.substring(0, separator + 1);
+        String argument = separator < 0 ? payload : payload.substring(separator + 1);
+
+        switch (prefix) {
+            case APPROVE -> decide(click, argument, statut.Approuver);
+            case REJECT -> decide(click, argument, statut.Rejeter);
+            case ATTENTE -> decide(click, argument, statut.En_Attente);
+            case RESEND -> resend(argument);
+            default -> logger.warn("Unknown button payload: {}", payload);
+        }
+    }
+
+    private void decide(WebhookEvent.ButtonClick click, String argument, statut decision) {
+        // Webhook senders arrive without the plus, assignments are stored as +<digits>
+        String from = click.from().startsWith("+") ? click.from() : "+" + click.from();
+        String approvalId = resolveApprovalId(click, argument, from);
+        if (approvalId == null) {
+            return;
+        }
+        if (!approvalService.updateStatus(approvalId, decision)) {
+            return;
+        }
+        approverAssignmentService.markDecided(approvalId, from, decision);
+        logger.info("La Demande {} est passée à {} !", approvalId, decision);
+    }
+
+    // The approval the click decides, null when the payload is invalid or the sender is not the approver it was sent to
+    private String resolveApprovalId(WebhookEvent.ButtonClick click, String argument, String from) {
+        Optional<ButtonToken> token = buttonTokenService.decode(argument);
+        if (token.isPresent()) {
+            String approvalId = token.get().approvalId();
+            logger.debug("Button token for approval {} (approver #{})", approvalId, token.get().approverIndex());
+            // A forwarded message keeps its buttons, the token only works for the approver it was issued to
+            if (!approverAssignmentService.isApproverAt(approvalId, token.get().approverIndex(), from)) {
+                logger.warn("Rejected button click on approval {} from {}, token issued to approver #{}",
+                        approvalId, from, token.get().approverIndex());
+                return null;
+            }
+            return approvalId;
+        }
+
+        // Messages sent before signed tokens carried the raw approval id, resolve those through the mapping store
+        if (LEGACY_APPROVAL_ID.matcher(argument).matches()) {
+            String approvalId = messageIdMappingService.getApprovalId(click.contextId());
+            if (approvalId == null) {
+                logger.warn("No request found for original message ID: {}", click.contextId());
+                return null;
+            }
+            if (!approverAssignmentService.isApprover(approvalId, from)) {
+                logger.warn("Rejected button click on approval {} from {}, not one of its approvers", approvalId, from);
+                return null;
+            }
+            return approvalId;
+        }
+
+        logger.warn("Rejected button payload with an invalid or expired token from {}", click.from());
+        return null;
+    }
+
+    private void resend(String mappingId) {
+        Optional<OtpResendMapping> mappingOptional = otpResendMappingService.getResendMapping(mappingId);
+        if (mappingOptional.isEmpty()) {
+            logger.warn("Resend link {} is unknown or expired", mappingId);
+            return;
+        }
+
+        OtpResendMapping mapping = mappingOptional.get();
+        try {
+            ApprovalRequest approvalRequest = approvalService.getApproval(mapping.getApprovalId());
+            approvalService.sendOtpAndCreateApprovalOTP(approvalRequest, mapping.getRecipientNumber());
+            otpResendMappingService.deleteResendMapping(mappingId); // Clean up after resend
+            logger.info("OTP resent to {} for approval {}", mapping.getRecipientNumber(), mapping.getApprovalId());
+        } catch (Exception e) {
+            logger.error("Failed to resend OTP to {}: {}", mapping.getRecipientNumber(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import org.sid.serviceapprobationwhatsapp.dto.ButtonToken;
+import org.sid.serviceapprobationwhatsapp.service.ButtonTokenService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Self-contained button payload token, so a decision can be routed on any node without a lookup.
+ * <p>
+ * Layout before base64url encoding (34 bytes, 46 characters):
+ * {@code [version:1][approvalId uuid:16][approverIndex:1][expiry epoch seconds:4][HMAC-SHA256 truncated:12]}
+ */
+@Service
+public class ButtonTokenServiceImpl implements ButtonTokenService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ButtonTokenServiceImpl.class);
+
+    private static final byte VERSION = 1;
+    private static final int BODY_LENGTH = 1 + 16 + 1 + 4;
+    private static final int MAC_LENGTH = 12;
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    // Full HMAC-SHA256 key size
+    private static final int MIN_SECRET_BYTES = 32;
+
+    private final SecretKeySpec key;
+    private final Duration ttl;
+    private final ThreadLocal<Mac> macs;
+
+    public ButtonTokenServiceImpl(@Value("${button.token.secret}") String secret,
+                                  @Value("${approval.lifetime-hours:168}") long approvalLifetimeHours) {
+        // Whoever holds the key can mint APPROVE_ tokens: never a default, refuse to start without a real one
+        if (secret == null || secret.getBytes(StandardCharsets.UTF_8).length < MIN_SECRET_BYTES) {
+            throw new IllegalStateException("button.token.secret (BUTTON_TOKEN_SECRET) must be set to at least " + MIN_SECRET_BYTES + " bytes");
+        }
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        this.ttl = Duration.ofHours(approvalLifetimeHours);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    @Override
+    public String encode(String approvalId, int approverIndex) {
+        if (approverIndex < 0 || approverIndex > 255) {
+            throw new IllegalArgumentException("Approver index out of range: " + approverIndex);
+        }
+        UUID uuid = UUID.fromString(approvalId);
+        long expiry = Instant.now().plus(ttl).getEpochSecond();
+
+        ByteBuffer buffer = ByteBuffer.allocate(BODY_LENGTH + MAC_LENGTH);
+        buffer.put(VERSION)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .put((byte) approverIndex)
+                .putInt((int) expiry);
+        buffer.put(sign(buffer.array()), 0, MAC_LENGTH);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    @Override
+    public Optional<ButtonToken> decode(String token) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if (bytes.length != BODY_LENGTH + MAC_LENGTH || bytes[0] != VERSION) {
+            return Optional.empty();
+        }
+
+        byte[] expectedMac = Arrays.copyOf(sign(bytes), MAC_LENGTH);
+        byte[] actualMac = Arrays.copyOfRange(bytes, BODY_LENGTH, BODY_LENGTH + MAC_LENGTH);
+        if (!MessageDigest.isEqual(expectedMac, actualMac)) {
+            logger.warn("Rejected button token with an invalid signature");
+            return Optional.empty();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, BODY_LENGTH - 1);
+        UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+        int approverIndex = Byte.toUnsignedInt(buffer.get());
+        Instant expiresAt = Instant.ofEpochSecond(Integer.toUnsignedLong(buffer.getInt()));
+        if (Instant.now().isAfter(expiresAt)) {
+            logger.warn("Rejected expired button token for approval {}", uuid);
+            return Optional.empty();
+        }
+        return Optional.of(new ButtonToken(uuid.toString(), approverIndex, expiresAt));
+    }
+
+    // MAC over the token body only
+    private byte[] sign(byte[] token) {
+        Mac mac = macs.get();
+        mac.update(token, 0, BODY_LENGTH);
+        return mac.doFinal();
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialise " + HMAC_ALGORITHM, e);
+        }
+    }
+}
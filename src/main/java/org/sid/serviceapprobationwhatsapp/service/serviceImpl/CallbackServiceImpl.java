@@ -0,0 +1,297 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.sid.serviceapprobationwhatsapp.dto.DecisionEvent;
+import org.sid.serviceapprobationwhatsapp.entities.CallbackDelivery;
+import org.sid.serviceapprobationwhatsapp.enums.callbackStatut;
+import org.sid.serviceapprobationwhatsapp.repositories.CallbackDeliveryRepository;
+import org.sid.serviceapprobationwhatsapp.service.CallbackService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Reports decisions to the origin system's callbackUrl.
+ * Deliveries are persisted with the decision and become due after a short coalescing window,
+ * so decisions bound for the same URL go out together as one {@code {"decisions":[...]}} POST.
+ * The poller never blocks: it claims a batch (compare-and-set, like the outbox) and hands it to a worker,
+ * at most {@code callback.max-per-host} batches in flight per host. Failures back off exponentially
+ * with jitter and end in DEAD once attempts run out or the origin refuses the request.
+ * Only hosts listed in {@code callback.allowed-hosts} are ever called.
+ */
+@Service
+public class CallbackServiceImpl implements CallbackService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CallbackServiceImpl.class);
+
+    private static final Set<callbackStatut> CLAIMABLE = EnumSet.of(callbackStatut.PENDING, callbackStatut.SENDING);
+
+    @Value("${callback.poll-size:500}")
+    private int pollSize;
+
+    @Value("${callback.max-batch:50}")
+    private int maxBatch;
+
+    @Value("${callback.coalesce-window-ms:200}")
+    private long coalesceWindowMs;
+
+    @Value("${callback.max-per-host:4}")
+    private int maxPerHost;
+
+    @Value("${callback.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${callback.backoff-ms:1000}")
+    private long backoffMs;
+
+    @Value("${callback.max-backoff-ms:600000}")
+    private long maxBackoffMs;
+
+    @Value("${callback.lease-seconds:60}")
+    private long leaseSeconds;
+
+    // Hosts decisions may be posted to: exact names, or *.example.com for any subdomain. Empty means none
+    @Value("${callback.allowed-hosts:}")
+    private List<String> allowedHosts;
+
+    private final CallbackDeliveryRepository callbackDeliveryRepository;
+    private final RestTemplate restTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TaskExecutor callbackExecutor;
+    private final ObjectMapper objectMapper;
+
+    // In-flight batches per host on this node
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    public CallbackServiceImpl(CallbackDeliveryRepository callbackDeliveryRepository,
+                               RestTemplate restTemplate,
+                               TransactionTemplate transactionTemplate,
+                               @Qualifier("callbackExecutor") TaskExecutor callbackExecutor,
+                               ObjectMapper objectMapper) {
+        this.callbackDeliveryRepository = callbackDeliveryRepository;
+        this.restTemplate = restTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.callbackExecutor = callbackExecutor;
+        this.objectMapper = objectMapper;
+    }
+
+    // Same transaction as the decision: no decision without its delivery, no delivery for a rolled-back decision
+    @Override
+    @Transactional(propagation = Propagation.REQUIRED)
+    public void enqueueDecision(DecisionEvent event, String callbackUrl) {
+        if (callbackUrl == null || callbackUrl.isBlank()) {
+            return;
+        }
+        String host = hostOf(callbackUrl);
+        if (host == null) {
+            logger.warn("Approval {} has an unusable callbackUrl '{}', decision not reported", event.approvalId(), callbackUrl);
+            return;
+        }
+        // callbackUrl comes from the caller, posting anywhere it points would let it reach internal services
+        if (!isAllowed(host)) {
+            logger.warn("Approval {} has a callbackUrl on host {} outside callback.allowed-hosts, decision not reported", event.approvalId(), host);
+            return;
+        }
+
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize decision event for approval " + event.approvalId(), e);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        CallbackDelivery delivery = CallbackDelivery.builder()
+                .approvalId(event.approvalId())
+                .callbackUrl(callbackUrl)
+                .host(host)
+                .payload(payload)
+                .status(callbackStatut.PENDING)
+                .attempts(0)
+                .createdAt(now)
+                // Held back briefly so decisions arriving close together share a POST
+                .nextAttemptAt(now.plusNanos(coalesceWindowMs * 1_000_000))
+                .build();
+        callbackDeliveryRepository.save(delivery);
+        logger.debug("Queued {} callback for approval {} to {}", event.decision(), event.approvalId(), host);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${callback.poll-interval-ms:200}")
+    public int dispatchDueDeliveries() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> due = callbackDeliveryRepository.findDue(CLAIMABLE, now, PageRequest.of(0, pollSize));
+        if (due.isEmpty()) {
+            return 0;
+        }
+
+        // Due ids per callback URL, oldest first
+        Map<String, List<Long>> idsByUrl = new LinkedHashMap<>();
+        Map<String, String> hostByUrl = new LinkedHashMap<>();
+        for (Object[] row : due) {
+            String url = (String) row[1];
+            idsByUrl.computeIfAbsent(url, key -> new ArrayList<>()).add((Long) row[0]);
+            hostByUrl.putIfAbsent(url, (String) row[2]);
+        }
+
+        int dispatched = 0;
+        for (Map.Entry<String, List<Long>> entry : idsByUrl.entrySet()) {
+            String url = entry.getKey();
+            Semaphore permits = hostPermits.computeIfAbsent(hostByUrl.get(url), host -> new Semaphore(Math.max(1, maxPerHost)));
+            List<Long> ids = entry.getValue();
+
+            for (int from = 0; from < ids.size(); from += maxBatch) {
+                // Host at its limit: the rest stays due and is picked up by a later poll
+                if (!permits.tryAcquire()) {
+                    break;
+                }
+                List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + maxBatch));
+                String token = UUID.randomUUID().toString();
+                Integer claimed = transactionTemplate.execute(status -> callbackDeliveryRepository.claim(
+                        chunk, CLAIMABLE, callbackStatut.SENDING, token, now, now.plusSeconds(leaseSeconds)));
+                if (claimed == null || claimed == 0) {
+                    permits.release();
+                    continue; // Taken by another node
+                }
+                try {
+                    callbackExecutor.execute(() -> {
+                        try {
+                            send(token, url);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                    dispatched += claimed;
+                } catch (TaskRejectedException e) {
+                    // Workers saturated, the lease expires and the batch is claimed again later
+                    permits.release();
+                    logger.warn("Callback workers saturated, deferring {} deliveries to {}", claimed, url);
+                    return dispatched;
+                }
+            }
+        }
+        return dispatched;
+    }
+
+    private void send(String token, String url) {
+        List<CallbackDelivery> batch = callbackDeliveryRepository.findByClaimTokenAndStatus(token, callbackStatut.SENDING);
+        if (batch.isEmpty()) {
+            return;
+        }
+        // Queued before the host was taken off the allow list
+        if (!isAllowed(batch.get(0).getHost())) {
+            transactionTemplate.execute(status -> callbackDeliveryRepository.markDead(
+                    token, callbackStatut.SENDING, callbackStatut.DEAD, true, maxAttempts, "Host not in callback.allowed-hosts"));
+            logger.error("{} callback(s) to {} dead-lettered: host not in callback.allowed-hosts", batch.size(), url);
+            return;
+        }
+
+        // Payloads are stored as serialized events, joined as-is instead of being parsed again
+        String body = batch.stream().map(CallbackDelivery::getPayload)
+                .collect(Collectors.joining(",", "{\"decisions\":[", "]}"));
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        try {
+            restTemplate.postForEntity(url, new HttpEntity<>(body, headers), String.class);
+            transactionTemplate.execute(status -> callbackDeliveryRepository.markDelivered(
+                    token, callbackStatut.SENDING, callbackStatut.DELIVERED, LocalDateTime.now()));
+            logger.info("Delivered {} decision(s) to {}", batch.size(), url);
+        } catch (Exception e) {
+            markFailed(token, batch, url, e);
+        }
+    }
+
+    private void markFailed(String token, List<CallbackDelivery> batch, String url, Exception e) {
+        // A 4xx other than timeout / throttling will not get better by retrying
+        boolean permanent = e instanceof HttpClientErrorException clientError
+                && clientError.getStatusCode().value() != HttpStatus.TOO_MANY_REQUESTS.value()
+                && clientError.getStatusCode().value() != HttpStatus.REQUEST_TIMEOUT.value();
+        String error = truncate(e.getMessage());
+        // The batch went out together, it comes back together: one backoff, sized on its most retried entry
+        int attempts = batch.stream().mapToInt(CallbackDelivery::getAttempts).max().orElse(0) + 1;
+        LocalDateTime nextAttemptAt = LocalDateTime.now().plusNanos(backoff(attempts) * 1_000_000);
+
+        int[] counts = transactionTemplate.execute(status -> new int[]{
+                callbackDeliveryRepository.markDead(token, callbackStatut.SENDING, callbackStatut.DEAD, permanent, maxAttempts, error),
+                callbackDeliveryRepository.reschedule(token, callbackStatut.SENDING, callbackStatut.PENDING, nextAttemptAt, error)});
+        int dead = counts == null ? 0 : counts[0];
+        int retried = counts == null ? 0 : counts[1];
+
+        if (dead + retried == 0) {
+            logger.warn("Callback batch to {} failed after its lease ran out, left to the node that reclaimed it: {}", url, e.getMessage());
+        } else if (dead > 0) {
+            logger.error("{} of {} callback(s) to {} dead-lettered: {}", dead, dead + retried, url, e.getMessage());
+        } else {
+            logger.warn("Callback batch of {} to {} failed, retrying with backoff: {}", retried, url, e.getMessage());
+        }
+    }
+
+    // Exponential with equal jitter: half the step guaranteed, the other half random, so failed hosts are not hit in lockstep
+    private long backoff(int attempts) {
+        long step = Math.min(maxBackoffMs, backoffMs * (1L << Math.min(attempts - 1, 20)));
+        long half = Math.max(1, step / 2);
+        return half + ThreadLocalRandom.current().nextLong(half);
+    }
+
+    private boolean isAllowed(String host) {
+        for (String allowed : allowedHosts) {
+            String entry = allowed.trim().toLowerCase(Locale.ROOT);
+            if (entry.startsWith("*.") ? host.endsWith(entry.substring(1)) : host.equals(entry)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String hostOf(String url) {
+        try {
+            URI uri = URI.create(url.trim());
+            String scheme = uri.getScheme();
+            if (uri.getHost() == null || !("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme))) {
+                return null;
+            }
+            return uri.getHost().toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String truncate(String value) {
+        if (value == null) {
+            return null;
+        }
+        return value.length() <= 1000 ? value : value.substring(0, 1000);
+    }
+}
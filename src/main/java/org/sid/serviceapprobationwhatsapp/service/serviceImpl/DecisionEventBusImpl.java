@@ -0,0 +1,200 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.sid.serviceapprobationwhatsapp.dto.DecisionEvent;
+import org.sid.serviceapprobationwhatsapp.enums.statut;
+import org.sid.serviceapprobationwhatsapp.repositories.ApprovalRequestRepository;
+import org.sid.serviceapprobationwhatsapp.service.DecisionEventBus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * In-process fan-out of approver decisions to SSE subscribers and long-poll waiters.
+ * Both are servlet async requests: an open stream or a pending await holds a connection, never a request thread.
+ * Events are published after the decision commits and sent from the task executor, subscribers split in
+ * chunks of {@code decision-stream.send-chunk-size} per task, so a slow client never stalls the webhook path
+ * and only delays the few streams sharing its chunk. Decisions taken on another node reach long-poll waiters through the
+ * database re-check on timeout; streams only carry the decisions of this node.
+ */
+@Service
+public class DecisionEventBusImpl implements DecisionEventBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(DecisionEventBusImpl.class);
+
+    private record Subscriber(SseEmitter emitter, String origin, String objectType) {
+        boolean matches(DecisionEvent event) {
+            return (origin == null || origin.equals(event.origin()))
+                    && (objectType == null || objectType.equals(event.objectType()));
+        }
+    }
+
+    private final ApprovalRequestRepository approvalRequestRepository;
+    private final TaskExecutor taskExecutor;
+    private final long streamTimeoutMs;
+    private final int maxSubscribers;
+    private final long maxAwaitSeconds;
+    private final int sendChunkSize;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<DeferredResult<ResponseEntity<?>>>> waitersByApproval = new ConcurrentHashMap<>();
+    private final AtomicInteger waiterCount = new AtomicInteger();
+
+    public DecisionEventBusImpl(ApprovalRequestRepository approvalRequestRepository,
+                                @Qualifier("taskExecutor") TaskExecutor taskExecutor,
+                                @Value("${decision-stream.timeout-ms:1800000}") long streamTimeoutMs,
+                                @Value("${decision-stream.max-subscribers:10000}") int maxSubscribers,
+                                @Value("${decision-stream.max-await-seconds:60}") long maxAwaitSeconds,
+                                @Value("${decision-stream.send-chunk-size:50}") int sendChunkSize,
+                                MeterRegistry meterRegistry) {
+        this.approvalRequestRepository = approvalRequestRepository;
+        this.taskExecutor = taskExecutor;
+        this.streamTimeoutMs = streamTimeoutMs;
+        this.maxSubscribers = maxSubscribers;
+        this.maxAwaitSeconds = maxAwaitSeconds;
+        this.sendChunkSize = Math.max(1, sendChunkSize);
+        Gauge.builder("decision.stream.subscribers", subscribers, Set::size).register(meterRegistry);
+        Gauge.builder("decision.await.waiters", waiterCount, AtomicInteger::get).register(meterRegistry);
+    }
+
+    @Override
+    public void publishAfterCommit(DecisionEvent event) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatch(event);
+                }
+            });
+        } else {
+            dispatch(event);
+        }
+    }
+
+    private void dispatch(DecisionEvent event) {
+        Set<DeferredResult<ResponseEntity<?>>> waiters = waitersByApproval.remove(event.approvalId());
+        if (waiters != null) {
+            ResponseEntity<?> response = decided(event.approvalId(), event.decision());
+            waiters.forEach(waiter -> waiter.setResult(response));
+        }
+        List<Subscriber> targets = subscribers.stream().filter(subscriber -> subscriber.matches(event)).toList();
+        // Runs in afterCommit of the decision: a saturated executor must not surface in updateStatus
+        sendInChunks(targets, () -> SseEmitter.event().name("decision").id(event.approvalId()).data(event),
+                "decision " + event.approvalId());
+    }
+
+    @Override
+    public SseEmitter subscribe(String origin, String objectType) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        if (subscribers.size() >= maxSubscribers) {
+            logger.warn("Decision stream full ({} subscribers), refusing a new one", maxSubscribers);
+            emitter.completeWithError(new IllegalStateException("Too many decision stream subscribers"));
+            return emitter;
+        }
+        Subscriber subscriber = new Subscriber(emitter, blankToNull(origin), blankToNull(objectType));
+        subscribers.add(subscriber);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        return emitter;
+    }
+
+    @Override
+    public DeferredResult<ResponseEntity<?>> await(String approvalId, long timeoutSeconds) {
+        long timeout = Math.max(1, Math.min(timeoutSeconds, maxAwaitSeconds));
+        DeferredResult<ResponseEntity<?>> waiter = new DeferredResult<>(timeout * 1000);
+
+        // Registered before reading the current state, so a decision landing in between is not missed
+        Set<DeferredResult<ResponseEntity<?>>> waiters = waitersByApproval.computeIfAbsent(approvalId, key -> ConcurrentHashMap.newKeySet());
+        waiters.add(waiter);
+        waiterCount.incrementAndGet();
+        waiter.onCompletion(() -> {
+            waiterCount.decrementAndGet();
+            waitersByApproval.computeIfPresent(approvalId, (key, set) -> {
+                set.remove(waiter);
+                return set.isEmpty() ? null : set;
+            });
+        });
+        // Decided elsewhere (another node) or still open: the database answers
+        waiter.onTimeout(() -> waiter.setResult(currentState(approvalId)));
+
+        Optional<statut> decision = approvalRequestRepository.findDecisionById(approvalId);
+        if (decision.isEmpty()) {
+            waiter.setResult(ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Approval not found, Invalid approval ID.")));
+        } else if (isFinal(decision.get())) {
+            waiter.setResult(decided(approvalId, decision.get()));
+        }
+        return waiter;
+    }
+
+    // Comment lines keep idle streams alive through proxies and flush out clients that went away.
+    // The writes block on slow clients, so they run on the task executor and never hold a scheduler thread
+    @Scheduled(fixedDelayString = "${decision-stream.heartbeat-ms:15000}")
+    public void heartbeat() {
+        sendInChunks(List.copyOf(subscribers), () -> SseEmitter.event().comment("keep-alive"), "heartbeat");
+    }
+
+    // A builder accumulates its output on build(), every send gets its own
+    private void sendInChunks(List<Subscriber> targets, Supplier<SseEmitter.SseEventBuilder> event, String what) {
+        for (int from = 0; from < targets.size(); from += sendChunkSize) {
+            List<Subscriber> chunk = targets.subList(from, Math.min(from + sendChunkSize, targets.size()));
+            try {
+                taskExecutor.execute(() -> chunk.forEach(subscriber -> send(subscriber, event.get())));
+            } catch (TaskRejectedException e) {
+                logger.warn("Task executor saturated, {} skipped for {} decision stream subscriber(s)", what, targets.size() - from);
+                return;
+            }
+        }
+    }
+
+    private void send(Subscriber subscriber, SseEmitter.SseEventBuilder event) {
+        try {
+            subscriber.emitter().send(event);
+        } catch (IOException | IllegalStateException e) {
+            subscribers.remove(subscriber);
+            subscriber.emitter().completeWithError(e);
+        }
+    }
+
+    private ResponseEntity<?> currentState(String approvalId) {
+        Optional<statut> decision = approvalRequestRepository.findDecisionById(approvalId);
+        if (decision.isPresent() && isFinal(decision.get())) {
+            return decided(approvalId, decision.get());
+        }
+        // Nothing yet, the client polls again
+        return ResponseEntity.noContent().build();
+    }
+
+    private static ResponseEntity<?> decided(String approvalId, statut decision) {
+        return ResponseEntity.ok(Map.of("approvalId", approvalId, "decision", decision.name()));
+    }
+
+    private static boolean isFinal(statut decision) {
+        return decision == statut.Approuver || decision == statut.Rejeter;
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+}
@@ -0,0 +1,53 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.sid.serviceapprobationwhatsapp.dto.DueExpirations;
+import org.sid.serviceapprobationwhatsapp.service.ExpiryScheduler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Timing wheels holding the expiry of every live OTP and resend mapping, registered when they are created.
+ * Holds no dependencies so any service can schedule into it; {@link OtpExpiryServiceImpl} drains it.
+ */
+@Service
+public class ExpirySchedulerImpl implements ExpiryScheduler {
+
+    private final TimingWheel<Long> otpWheel;
+    private final TimingWheel<String> resendMappingWheel;
+
+    public ExpirySchedulerImpl(@Value("${expiry.tick-ms:1000}") long tickMs,
+                               @Value("${expiry.wheel-size:64}") int wheelSize,
+                               @Value("${expiry.levels:4}") int levels,
+                               MeterRegistry meterRegistry) {
+        long now = System.currentTimeMillis();
+        this.otpWheel = new TimingWheel<>(tickMs, wheelSize, levels, now);
+        this.resendMappingWheel = new TimingWheel<>(tickMs, wheelSize, levels, now);
+        Gauge.builder("expiry.timers", otpWheel, TimingWheel::size).tag("kind", "otp").register(meterRegistry);
+        Gauge.builder("expiry.timers", resendMappingWheel, TimingWheel::size).tag("kind", "resend-mapping").register(meterRegistry);
+    }
+
+    @Override
+    public void scheduleOtp(Long otpId, LocalDateTime expiration) {
+        otpWheel.schedule(toEpochMillis(expiration), otpId);
+    }
+
+    @Override
+    public void scheduleResendMapping(String mappingId, LocalDateTime expiration) {
+        resendMappingWheel.schedule(toEpochMillis(expiration), mappingId);
+    }
+
+    @Override
+    public DueExpirations advance() {
+        long now = System.currentTimeMillis();
+        return new DueExpirations(otpWheel.advance(now), resendMappingWheel.advance(now));
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
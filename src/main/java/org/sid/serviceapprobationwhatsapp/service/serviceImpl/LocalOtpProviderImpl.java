@@ -0,0 +1,93 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import org.sid.serviceapprobationwhatsapp.dto.OtpChallenge;
+import org.sid.serviceapprobationwhatsapp.dto.PendingOtp;
+import org.sid.serviceapprobationwhatsapp.service.OtpProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * In-process OTP engine: codes come from a CSPRNG and are delivered in the envoieotp WhatsApp template.
+ * Only {@code HMAC-SHA256(secret, salt || code)} and the salt are stored, the server-side secret keeps a leaked
+ * table from being brute-forced offline. Verification is a local constant-time compare.
+ */
+@Service
+@ConditionalOnProperty(name = "otp.provider", havingValue = "local")
+public class LocalOtpProviderImpl implements OtpProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalOtpProviderImpl.class);
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int SALT_LENGTH = 16;
+
+    private final SecureRandom random = new SecureRandom();
+    private final SecretKeySpec key;
+    private final int digits;
+    private final int bound;
+    private final ThreadLocal<Mac> macs;
+
+    public LocalOtpProviderImpl(@Value("${otp.local.secret}") String secret,
+                                @Value("${otp.local.digits:6}") int digits) {
+        if (digits < 4 || digits > 9) {
+            throw new IllegalArgumentException("otp.local.digits must be between 4 and 9: " + digits);
+        }
+        // A known key makes stored hashes brute-forceable offline, so no default and no short keys
+        if (secret == null || secret.getBytes(StandardCharsets.UTF_8).length < 32) {
+            throw new IllegalStateException("otp.local.secret (OTP_LOCAL_SECRET) must be set to at least 32 bytes");
+        }
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        this.digits = digits;
+        this.bound = (int) Math.pow(10, digits);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    @Override
+    public OtpChallenge issue(String phoneNumber) {
+        String code = String.format("%0" + digits + "d", random.nextInt(bound));
+        byte[] salt = new byte[SALT_LENGTH];
+        random.nextBytes(salt);
+
+        Base64.Encoder encoder = Base64.getEncoder();
+        return new OtpChallenge("local-" + UUID.randomUUID(), code, encoder.encodeToString(hash(salt, code)), encoder.encodeToString(salt));
+    }
+
+    @Override
+    public boolean verify(PendingOtp otp, String code) {
+        if (code == null || otp.codeHash() == null || otp.codeSalt() == null) {
+            logger.warn("OTP {} has no local code to check against", otp.verificationSid());
+            return false;
+        }
+        Base64.Decoder decoder = Base64.getDecoder();
+        byte[] expected = decoder.decode(otp.codeHash());
+        byte[] actual = hash(decoder.decode(otp.codeSalt()), code.trim());
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private byte[] hash(byte[] salt, String code) {
+        Mac mac = macs.get();
+        mac.update(salt);
+        return mac.doFinal(code.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialise " + HMAC_ALGORITHM, e);
+        }
+    }
+}
@@ -1,42 +1,157 @@
 package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import org.sid.serviceapprobationwhatsapp.entities.MessageIdMapping;
+import org.sid.serviceapprobationwhatsapp.repositories.MessageIdMappingRepository;
 import org.sid.serviceapprobationwhatsapp.service.MessageIdMappingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
+/**
+ * Two-tier messageId -> approvalId store.
+ * Reads hit a size- and TTL-bounded cache first and fall back to the indexed message_id_mappings table;
+ * writes land in the cache immediately and are persisted in batches by a write-behind flush.
+ * At most {@code message-mapping.max-pending-writes} wait for the flush, past that (DB slow or down) a write
+ * is persisted synchronously by its caller, so memory stays bounded and no mapping is dropped.
+ * Rows expire with the approval lifetime and are purged on a schedule.
+ */
 @Service
 public class MessageIdMappingServiceImpl implements MessageIdMappingService {
 
-    // Use ConcurrentHashMap for thread safety
-    private final Map<String, String> messageIdToApprovalIdMap = new ConcurrentHashMap<>();
+    private static final Logger logger = LoggerFactory.getLogger(MessageIdMappingServiceImpl.class);
 
+    private final Cache<String, String> messageIdToApprovalId;
+    private final BlockingQueue<MessageIdMapping> pendingWrites;
+    private final Duration approvalLifetime;
+    private final int flushBatchSize;
+    private final MessageIdMappingRepository messageIdMappingRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter synchronousWrites;
 
-    @Override
-    public void storeMapping(String messageId, String approvalId) {
-        messageIdToApprovalIdMap.put(messageId, approvalId);
-        logAllMappings();
+    public MessageIdMappingServiceImpl(@Value("${message-mapping.cache.max-size:50000}") long maxSize,
+                                       @Value("${message-mapping.cache.ttl-minutes:60}") long cacheTtlMinutes,
+                                       @Value("${approval.lifetime-hours:168}") long approvalLifetimeHours,
+                                       @Value("${message-mapping.flush-batch-size:200}") int flushBatchSize,
+                                       @Value("${message-mapping.max-pending-writes:10000}") int maxPendingWrites,
+                                       MessageIdMappingRepository messageIdMappingRepository,
+                                       EntityManager entityManager,
+                                       TransactionTemplate transactionTemplate,
+                                       MeterRegistry meterRegistry) {
+        this.approvalLifetime = Duration.ofHours(approvalLifetimeHours);
+        this.flushBatchSize = flushBatchSize;
+        this.pendingWrites = new LinkedBlockingQueue<>(Math.max(1, maxPendingWrites));
+        this.messageIdMappingRepository = messageIdMappingRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.messageIdToApprovalId = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(Duration.ofMinutes(cacheTtlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, messageIdToApprovalId, "message.mapping");
+        meterRegistry.gaugeCollectionSize("message.mapping.pending.writes", List.of(), pendingWrites);
+        this.synchronousWrites = Counter.builder("message.mapping.sync.writes")
+                .description("Mappings written by their caller because the write-behind queue was full")
+                .register(meterRegistry);
     }
 
     @Override
-    public void clearMapping() {
-        messageIdToApprovalIdMap.clear();
+    public void storeMapping(String messageId, String approvalId) {
+        messageIdToApprovalId.put(messageId, approvalId);
+        LocalDateTime now = LocalDateTime.now();
+        MessageIdMapping mapping = MessageIdMapping.builder()
+                .messageId(messageId)
+                .approvalId(approvalId)
+                .createdAt(now)
+                .expiresAt(now.plus(approvalLifetime))
+                .build();
+        if (!pendingWrites.offer(mapping)) {
+            synchronousWrites.increment();
+            persistOne(mapping);
+        }
     }
 
+    // Only drops the in-memory tier, persisted mappings are reloaded on demand
     @Override
-    public void logAllMappings() {
-        messageIdToApprovalIdMap.forEach((key, value) ->
-                System.out.println("Message ID: " + key + " -> Approval ID: " + value));
+    public void clearMapping() {
+        messageIdToApprovalId.invalidateAll();
     }
 
     @Override
     public int getMapSize() {
-        return messageIdToApprovalIdMap.size();
+        return (int) messageIdToApprovalId.estimatedSize();
     }
 
     @Override
     public String getApprovalId(String messageId) {
-        return messageIdToApprovalIdMap.get(messageId);
+        if (messageId == null) {
+            return null;
+        }
+        String approvalId = messageIdToApprovalId.getIfPresent(messageId);
+        if (approvalId != null) {
+            return approvalId;
+        }
+        approvalId = messageIdMappingRepository.findLiveApprovalId(messageId, LocalDateTime.now()).orElse(null);
+        if (approvalId != null) {
+            messageIdToApprovalId.put(messageId, approvalId);
+        }
+        return approvalId;
+    }
+
+    @Scheduled(fixedDelayString = "${message-mapping.flush-interval-ms:200}")
+    public void flushPendingWrites() {
+        while (!pendingWrites.isEmpty()) {
+            List<MessageIdMapping> batch = new ArrayList<>(flushBatchSize);
+            MessageIdMapping mapping;
+            while (batch.size() < flushBatchSize && (mapping = pendingWrites.poll()) != null) {
+                batch.add(mapping);
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> batch.forEach(entityManager::persist));
+            } catch (Exception e) {
+                // Most likely a duplicate message id, fall back to row-by-row upserts
+                logger.warn("Batch write of {} message mappings failed ({}), retrying one by one", batch.size(), e.getMessage());
+                batch.forEach(this::persistOne);
+            }
+        }
+    }
+
+    private void persistOne(MessageIdMapping mapping) {
+        try {
+            messageIdMappingRepository.save(mapping);
+        } catch (Exception e) {
+            logger.error("Could not persist mapping {} -> {}: {}", mapping.getMessageId(), mapping.getApprovalId(), e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${message-mapping.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        Integer purged = transactionTemplate.execute(status -> messageIdMappingRepository.deleteExpired(LocalDateTime.now()));
+        if (purged != null && purged > 0) {
+            logger.info("Purged {} expired message id mappings", purged);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushPendingWrites();
     }
 }
@@ -0,0 +1,123 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import jakarta.annotation.PostConstruct;
+import org.sid.serviceapprobationwhatsapp.dto.DueExpirations;
+import org.sid.serviceapprobationwhatsapp.entities.ApprovalOTP;
+import org.sid.serviceapprobationwhatsapp.enums.otpStatut;
+import org.sid.serviceapprobationwhatsapp.repositories.ApprovalOtpRepository;
+import org.sid.serviceapprobationwhatsapp.repositories.OtpResendMappingRepository;
+import org.sid.serviceapprobationwhatsapp.service.ExpiryScheduler;
+import org.sid.serviceapprobationwhatsapp.service.OtpExpiryService;
+import org.sid.serviceapprobationwhatsapp.service.OtpMessage;
+import org.sid.serviceapprobationwhatsapp.service.OtpResendMappingService;
+import org.sid.serviceapprobationwhatsapp.service.PendingOtpIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Drains the expiry wheels every tick: due OTPs still PENDING are expired with one UPDATE per batch and their
+ * approvers get the resendit template once per phone (queued in the same transaction), due resend mappings are
+ * deleted in bulk.
+ * The wheels are rebuilt from the DB on startup, overdue rows fire on the first tick.
+ */
+@Service
+public class OtpExpiryServiceImpl implements OtpExpiryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OtpExpiryServiceImpl.class);
+
+    @Value("${expiry.batch-size:100}")
+    private int batchSize;
+
+    private final ExpiryScheduler expiryScheduler;
+    private final ApprovalOtpRepository approvalOtpRepository;
+    private final OtpResendMappingRepository otpResendMappingRepository;
+    private final OtpResendMappingService otpResendMappingService;
+    private final OtpMessage otpMessage;
+    private final PendingOtpIndex pendingOtpIndex;
+    private final TransactionTemplate transactionTemplate;
+
+    public OtpExpiryServiceImpl(ExpiryScheduler expiryScheduler,
+                                ApprovalOtpRepository approvalOtpRepository,
+                                OtpResendMappingRepository otpResendMappingRepository,
+                                OtpResendMappingService otpResendMappingService,
+                                OtpMessage otpMessage,
+                                PendingOtpIndex pendingOtpIndex,
+                                TransactionTemplate transactionTemplate) {
+        this.expiryScheduler = expiryScheduler;
+        this.approvalOtpRepository = approvalOtpRepository;
+        this.otpResendMappingRepository = otpResendMappingRepository;
+        this.otpResendMappingService = otpResendMappingService;
+        this.otpMessage = otpMessage;
+        this.pendingOtpIndex = pendingOtpIndex;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        List<Object[]> otps = approvalOtpRepository.findIdAndExpirationByStatus(otpStatut.PENDING);
+        otps.forEach(row -> expiryScheduler.scheduleOtp((Long) row[0], (LocalDateTime) row[1]));
+        List<Object[]> mappings = otpResendMappingRepository.findIdAndExpiration();
+        mappings.forEach(row -> expiryScheduler.scheduleResendMapping((String) row[0], (LocalDateTime) row[1]));
+        logger.info("Expiry wheels rebuilt with {} pending OTPs and {} resend mappings", otps.size(), mappings.size());
+    }
+
+    @Scheduled(fixedDelayString = "${expiry.tick-ms:1000}")
+    @Override
+    public int expireDue() {
+        DueExpirations due = expiryScheduler.advance();
+        if (due.isEmpty()) {
+            return 0;
+        }
+        int affected = 0;
+        for (int from = 0; from < due.otpIds().size(); from += batchSize) {
+            affected += expireOtps(due.otpIds().subList(from, Math.min(from + batchSize, due.otpIds().size())));
+        }
+        for (int from = 0; from < due.resendMappingIds().size(); from += batchSize) {
+            List<String> batch = due.resendMappingIds().subList(from, Math.min(from + batchSize, due.resendMappingIds().size()));
+            Integer deleted = transactionTemplate.execute(status -> otpResendMappingRepository.deleteExpired(batch, LocalDateTime.now()));
+            affected += deleted == null ? 0 : deleted;
+        }
+        logger.debug("Expired {} OTP / resend mapping row(s)", affected);
+        return affected;
+    }
+
+    private int expireOtps(List<Long> otpIds) {
+        try {
+            List<ApprovalOTP> expired = transactionTemplate.execute(status -> {
+                // Locked so a concurrent verification cannot approve an OTP we are about to expire
+                List<ApprovalOTP> stillPending = approvalOtpRepository.findByIdsAndStatusForUpdate(otpIds, otpStatut.PENDING);
+                if (stillPending.isEmpty()) {
+                    return stillPending;
+                }
+                approvalOtpRepository.transitionAll(stillPending.stream().map(ApprovalOTP::getOtpId).toList(), otpStatut.PENDING, otpStatut.EXPIRED);
+                // Coalesced rows share a phone: one resendit each, the new code picks the other approvals back up
+                Map<String, String> approvalByPhone = new LinkedHashMap<>();
+                stillPending.forEach(otp -> approvalByPhone.put(otp.getRecipientNumber(), otp.getApprovalRequest().getId()));
+                approvalByPhone.forEach((phoneNumber, approvalId) ->
+                        otpMessage.resendOtpMessage(phoneNumber, otpResendMappingService.createResendMapping(approvalId, phoneNumber).getMappingId()));
+                return stillPending;
+            });
+            if (expired == null) {
+                return 0;
+            }
+            expired.forEach(otp -> pendingOtpIndex.invalidate(otp.getRecipientNumber()));
+            if (!expired.isEmpty()) {
+                logger.info("Expired {} OTP(s), resend offered to their approvers", expired.size());
+            }
+            return expired.size();
+        } catch (Exception e) {
+            // Rows stay PENDING, the lazy check on the next verification attempt still catches them
+            logger.error("Could not expire {} OTP(s): {}", otpIds.size(), e.getMessage());
+            return 0;
+        }
+    }
+}
@@ -2,45 +2,32 @@ package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.sid.serviceapprobationwhatsapp.enums.outboxType;
+import org.sid.serviceapprobationwhatsapp.service.OutboxService;
 import org.sid.serviceapprobationwhatsapp.service.PayloadCreatorService;
 import org.sid.serviceapprobationwhatsapp.service.OtpMessage;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 @Service
 public class OtpMessageImpl implements OtpMessage {
 
-    @Value("${whatsapp.api.url}")
-    private String whatsappApiUrl;
-
-    @Value("${whatsapp.api.token}")
-    private String whatsappApiToken;
-
-    private final RestTemplate restTemplate;
+    private final OutboxService outboxService;
 
     private final PayloadCreatorService payloadCreatorService;
 
-    public OtpMessageImpl(PayloadCreatorService payloadCreatorService, RestTemplate restTemplate) {
+    public OtpMessageImpl(PayloadCreatorService payloadCreatorService, OutboxService outboxService) {
         this.payloadCreatorService = payloadCreatorService;
-        this.restTemplate = restTemplate;
+        this.outboxService = outboxService;
     }
 
-    private HttpHeaders createHeaders() {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.add("Authorization", "Bearer " + whatsappApiToken);
-        return headers;
+    // Sends go through the outbox and are delivered by the dispatcher workers, callers get a 202
+    private ResponseEntity<String> enqueue(outboxType type, String recipientNumber, JSONObject requestBody) {
+        return outboxService.accepted(outboxService.enqueue(type, recipientNumber, null, requestBody.toString()));
     }
 
     @Override
-    public ResponseEntity<String> sendOtpMessage(String recipientNumber) {
-
-        System.out.println("Retrieved recipient phone number info: " + recipientNumber);
+    public ResponseEntity<String> sendOtpMessage(String recipientNumber, String code) {
 
         // Use PayloadCreatorService
         JSONObject requestBody = payloadCreatorService.createBaseRequestBody(recipientNumber);
@@ -53,24 +40,24 @@ public class OtpMessageImpl implements OtpMessage {
         titleComponent.put("type", "header");
         components.put(titleComponent);
 
-        // Body Component
+        // Body Component, carries the code when it is generated locally
         JSONObject bodyComponent = new JSONObject();
         bodyComponent.put("type", "body");
+        if (code != null) {
+            bodyComponent.put("parameters", new JSONArray().put(payloadCreatorService.createTextParameter(code)));
+        }
         components.put(bodyComponent);
 
         template.put("components", components);
         requestBody.put("template", template);
 
-        HttpEntity<String> request = new HttpEntity<>(requestBody.toString(), createHeaders());
-        return restTemplate.postForEntity(whatsappApiUrl, request, String.class);
+        return enqueue(outboxType.OTP, recipientNumber, requestBody);
 
     }
 
     @Override
     public ResponseEntity<String> resendOtpMessage(String recipientNumber, String mappingId) {
 
-        System.out.println("Retrieved recipient phone number info: " + recipientNumber);
-
         // Use PayloadCreatorService
         JSONObject requestBody = payloadCreatorService.createBaseRequestBody(recipientNumber);
         JSONObject template = payloadCreatorService.createTemplateObject("resendit");
@@ -102,14 +89,11 @@ public class OtpMessageImpl implements OtpMessage {
         template.put("components", components);
         requestBody.put("template", template);
 
-        HttpEntity<String> request = new HttpEntity<>(requestBody.toString(), createHeaders());
-        return restTemplate.postForEntity(whatsappApiUrl, request, String.class);
+        return enqueue(outboxType.OTP_RESEND, recipientNumber, requestBody);
     }
 
     @Override
     public ResponseEntity<String> sendTryAgain(String recipientNumber) {
-        System.out.println("Retrieved recipient phone number info: " + recipientNumber);
-
         // Use PayloadCreatorService
         JSONObject requestBody = payloadCreatorService.createBaseRequestBody(recipientNumber);
         JSONObject template = payloadCreatorService.createTemplateObject("retry");
@@ -129,7 +113,6 @@ public class OtpMessageImpl implements OtpMessage {
         template.put("components", components);
         requestBody.put("template", template);
 
-        HttpEntity<String> request = new HttpEntity<>(requestBody.toString(), createHeaders());
-        return restTemplate.postForEntity(whatsappApiUrl, request, String.class);
+        return enqueue(outboxType.TRY_AGAIN, recipientNumber, requestBody);
     }
 }
@@ -1,14 +1,15 @@
 package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
 
 import org.sid.serviceapprobationwhatsapp.entities.OtpResendMapping;
+import org.sid.serviceapprobationwhatsapp.ids.UuidV7;
 import org.sid.serviceapprobationwhatsapp.repositories.OtpResendMappingRepository;
+import org.sid.serviceapprobationwhatsapp.service.ExpiryScheduler;
 import org.sid.serviceapprobationwhatsapp.service.OtpResendMappingService;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.Optional;
-import java.util.UUID;
 
 @Service
 @Transactional
@@ -16,21 +17,26 @@ public class OtpResendMappingImpl implements OtpResendMappingService {
 
 
     private final OtpResendMappingRepository otpResendMappingRepository;
+    private final ExpiryScheduler expiryScheduler;
 
-    public OtpResendMappingImpl(OtpResendMappingRepository otpResendMappingRepository) {
+    public OtpResendMappingImpl(OtpResendMappingRepository otpResendMappingRepository, ExpiryScheduler expiryScheduler) {
         this.otpResendMappingRepository = otpResendMappingRepository;
+        this.expiryScheduler = expiryScheduler;
     }
 
     @Override
     public OtpResendMapping createResendMapping(String approvalId, String phoneNumber) {
-        String mappingId = UUID.randomUUID().toString();
+        String mappingId = UuidV7.generateString();
         OtpResendMapping mapping = OtpResendMapping.builder()
                 .mappingId(mappingId)
                 .approvalId(approvalId)
                 .recipientNumber(phoneNumber)
                 .expiration(LocalDateTime.now().plusMinutes(5)) // Expires in 5 minutes
                 .build();
-        return otpResendMappingRepository.save(mapping);
+        OtpResendMapping saved = otpResendMappingRepository.save(mapping);
+        // Deleted by the expiry wheel when it lapses, the check in getResendMapping covers the gap until then
+        expiryScheduler.scheduleResendMapping(saved.getMappingId(), saved.getExpiration());
+        return saved;
     }
 
     @Override
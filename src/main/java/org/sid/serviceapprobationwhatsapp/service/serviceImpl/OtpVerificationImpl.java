@@ -1,119 +1,182 @@
 package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
 
+import org.sid.serviceapprobationwhatsapp.dto.PendingOtp;
 import org.sid.serviceapprobationwhatsapp.entities.ApprovalOTP;
-import org.sid.serviceapprobationwhatsapp.entities.ApprovalRequest;
 import org.sid.serviceapprobationwhatsapp.enums.otpStatut;
+import org.sid.serviceapprobationwhatsapp.ids.UuidV7;
 import org.sid.serviceapprobationwhatsapp.repositories.ApprovalOtpRepository;
+import org.sid.serviceapprobationwhatsapp.repositories.ApprovalRequestRepository;
+import org.sid.serviceapprobationwhatsapp.service.ApproverAssignmentService;
 import org.sid.serviceapprobationwhatsapp.service.OtpMessage;
+import org.sid.serviceapprobationwhatsapp.service.OtpProvider;
+import org.sid.serviceapprobationwhatsapp.service.OtpResendMappingService;
 import org.sid.serviceapprobationwhatsapp.service.OtpVerification;
-import org.sid.serviceapprobationwhatsapp.service.TwilioService;
+import org.sid.serviceapprobationwhatsapp.service.PendingOtpIndex;
+import org.sid.serviceapprobationwhatsapp.service.TrustedSessionService;
 import org.sid.serviceapprobationwhatsapp.service.WhatsAppService;
-import org.sid.serviceapprobationwhatsapp.web.WhatsAppWebhookHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
+/**
+ * OTP verification shared by the webhook text path and the REST endpoint.
+ * A code settles its whole session, i.e. every ApprovalOTP row coalesced on the same verification.
+ * Every state change is a single conditional UPDATE (compare-and-set on status, atomic increment of the
+ * attempt count), so concurrent submissions for the same OTP cannot both approve it or share an attempt.
+ */
 @Service
 public class OtpVerificationImpl implements OtpVerification {
 
+    private static final Logger logger = LoggerFactory.getLogger(OtpVerificationImpl.class);
+
+    @Value("${otp.max-attempts:3}")
+    private int maxAttempts;
+
     private final WhatsAppService whatsAppService;
-    private final TwilioService twilioService;
+    private final OtpProvider otpProvider;
     private final ApprovalOtpRepository approvalOtpRepository;
+    private final ApprovalRequestRepository approvalRequestRepository;
     private final OtpMessage otpMessage;
+    private final TransactionTemplate transactionTemplate;
+    private final OtpResendMappingService otpResendMappingService;
+    private final PendingOtpIndex pendingOtpIndex;
+    private final TrustedSessionService trustedSessionService;
+    private final ApproverAssignmentService approverAssignmentService;
 
-    public OtpVerificationImpl(OtpMessage otpMessage, ApprovalOtpRepository approvalOtpRepository, TwilioService twilioService, WhatsAppService whatsAppService) {
+    public OtpVerificationImpl(OtpMessage otpMessage, ApprovalOtpRepository approvalOtpRepository, ApprovalRequestRepository approvalRequestRepository, OtpProvider otpProvider, WhatsAppService whatsAppService, TransactionTemplate transactionTemplate, OtpResendMappingService otpResendMappingService, PendingOtpIndex pendingOtpIndex, TrustedSessionService trustedSessionService, ApproverAssignmentService approverAssignmentService) {
         this.otpMessage = otpMessage;
         this.approvalOtpRepository = approvalOtpRepository;
-        this.twilioService = twilioService;
+        this.approvalRequestRepository = approvalRequestRepository;
+        this.otpProvider = otpProvider;
         this.whatsAppService = whatsAppService;
+        this.transactionTemplate = transactionTemplate;
+        this.otpResendMappingService = otpResendMappingService;
+        this.pendingOtpIndex = pendingOtpIndex;
+        this.trustedSessionService = trustedSessionService;
+        this.approverAssignmentService = approverAssignmentService;
     }
 
-    private static final Logger logger = LoggerFactory.getLogger(WhatsAppWebhookHandler.class);
-
     @Override
     public ResponseEntity<?> processOtpVerification(String phoneNumber, String messageBody) {
 
-        Optional<ApprovalOTP> optionalOtpAttempt = approvalOtpRepository
-                .findTopByRecipientNumberAndStatusOrderByCreatedAtDesc(phoneNumber, otpStatut.PENDING);
+        Optional<PendingOtp> optionalOtpAttempt = pendingOtpIndex.findPending(phoneNumber);
 
         if (optionalOtpAttempt.isEmpty()) {
             logger.warn("No pending OTP attempt found for phone: {}", phoneNumber);
             return ResponseEntity.badRequest().body(Map.of("error", "OTP introuvable"));
         }
 
-        ApprovalOTP otpAttempt = optionalOtpAttempt.get();
+        PendingOtp otpAttempt = optionalOtpAttempt.get();
+        return verify(otpAttempt, otpAttempt.approvalId(), phoneNumber, messageBody, true);
+    }
 
-        // Idempotency check: if the OTP attempt status is not PENDING, then it has already been processed.
-        if (otpAttempt.getStatus() != otpStatut.PENDING) {
-            logger.info("OTP attempt {} already processed with status {}", otpAttempt.getApprovalRequest().getId(), otpAttempt.getStatus());
-            return ResponseEntity.ok(Map.of("message", "OTP already processed"));
+    @Override
+    public ResponseEntity<?> verifyForApproval(String approvalId, String phoneNumber, String code) {
+        // Approval ids are bound as BINARY(16), a malformed one cannot match anything
+        if (!UuidV7.isUuid(approvalId) || !approvalRequestRepository.existsById(approvalId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Approval not found, Invalid approval ID."));
         }
 
-
-        ApprovalRequest approvalRequest = otpAttempt.getApprovalRequest();
-        if (approvalRequest == null) {
-            logger.warn("Approval Request is missing for OTP attempt for phone: {}", phoneNumber);
-            return ResponseEntity.badRequest().body(Map.of("error", "Approval Request is missing for OTP"));
-
-
+        Optional<PendingOtp> optionalOtpAttempt = pendingOtpIndex.findPending(phoneNumber);
+        if (optionalOtpAttempt.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.GONE).body(Map.of("error", "Invalid action. Access is expired."));
         }
 
-        String approvalId = approvalRequest.getId();
+        return verify(optionalOtpAttempt.get(), approvalId, phoneNumber, code, false);
+    }
+
+    private ResponseEntity<?> verify(PendingOtp otpAttempt, String approvalId, String phoneNumber, String code, boolean conversational) {
         logger.info("Processing approval request ID: {}", approvalId);
 
-        if (!approvalRequest.getApprovers().contains(phoneNumber)) {
+        if (!approverAssignmentService.isApprover(approvalId, phoneNumber)) {
             logger.warn("Invalid phone number {} for approval request {}", phoneNumber, approvalId);
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(Map.of("error", "Invalid phone number for this approval request."));
         }
 
         // Check expiration BEFORE verifying
-        if (LocalDateTime.now().isAfter(otpAttempt.getExpiration())) {
-            otpAttempt.setStatus(otpStatut.EXPIRED);
-            approvalOtpRepository.save(otpAttempt);
-            otpMessage.resendOtpMessage(phoneNumber, approvalRequest.getId());
-            logger.info("OTP expired for approval ID {}", approvalRequest.getId());
-
-            return ResponseEntity.status(HttpStatus.GONE)
-                    .body(Map.of("error", "OTP has expired"));
+        if (LocalDateTime.now().isAfter(otpAttempt.expiration())) {
+            Boolean expiredNow = transactionTemplate.execute(status -> {
+                if (approvalOtpRepository.transitionSession(phoneNumber, otpAttempt.verificationSid(), otpStatut.PENDING, otpStatut.EXPIRED) == 0) {
+                    return false;
+                }
+                otpMessage.resendOtpMessage(phoneNumber, otpResendMappingService.createResendMapping(approvalId, phoneNumber).getMappingId());
+                return true;
+            });
+            pendingOtpIndex.invalidate(phoneNumber);
+            if (Boolean.TRUE.equals(expiredNow)) {
+                logger.info("OTP expired for approval ID {}", approvalId);
+            }
+            return ResponseEntity.status(HttpStatus.GONE).body(Map.of("error", "OTP has expired"));
         }
 
-        boolean isValid = twilioService.checkVerificationCode(phoneNumber, messageBody, otpAttempt.getVerificationSid());
-
-        if (isValid) {
-            otpAttempt.setStatus(otpStatut.APPROVED);
-            approvalOtpRepository.save(otpAttempt);
-            logger.info("OTP verified successfully for approval ID {}", approvalId);
-            whatsAppService.sendMessageWithInteractiveButtons(approvalRequest);
-
-            return ResponseEntity.ok(Map.of("message", "OTP verified and approval request sent"));
+        if (otpProvider.verify(otpAttempt, code)) {
+            // One code covers every approval coalesced on this verification: the submission that wins the
+            // PENDING -> APPROVED transition of the session queues all of their approval messages at once
+            List<ApprovalOTP> released = transactionTemplate.execute(status -> {
+                List<ApprovalOTP> session = approvalOtpRepository.findSessionForUpdate(phoneNumber, otpAttempt.verificationSid(), otpStatut.PENDING);
+                if (session.isEmpty()) {
+                    return session;
+                }
+                approvalOtpRepository.transitionAll(session.stream().map(ApprovalOTP::getOtpId).toList(), otpStatut.PENDING, otpStatut.APPROVED);
+                session.forEach(row -> whatsAppService.sendMessageWithInteractiveButtons(row.getApprovalRequest(), phoneNumber));
+                approverAssignmentService.markVerified(session.stream().map(row -> row.getApprovalRequest().getId()).toList(), phoneNumber);
+                return session;
+            });
+            pendingOtpIndex.invalidate(phoneNumber);
+
+            if (released == null || released.isEmpty()) {
+                logger.info("OTP attempt for approval {} already processed", approvalId);
+                return ResponseEntity.ok(Map.of("message", "OTP already processed"));
+            }
+            trustedSessionService.open(phoneNumber, otpAttempt.verificationSid());
+            logger.info("OTP verified successfully for approval ID {}, {} approval message(s) released", approvalId, released.size());
+            return ResponseEntity.ok(Map.of("message", "Verification successful. Approval request sent."));
         }
-        else {
-            otpAttempt.setInvalidattempts(otpAttempt.getInvalidattempts() + 1);
-            approvalOtpRepository.save(otpAttempt);
-
-            logger.warn("Invalid OTP attempt {} for approval ID {}", otpAttempt.getInvalidattempts(), approvalId);
 
-            if (otpAttempt.getInvalidattempts() > 3 ) {
-                otpAttempt.setStatus(otpStatut.DENIED);
-                approvalOtpRepository.save(otpAttempt);
-                logger.error("Exceeded maximum OTP attempts for approval ID {}", approvalId);
-                otpMessage.resendOtpMessage(phoneNumber, approvalId);
+        return recordFailedAttempt(otpAttempt, approvalId, phoneNumber, conversational);
+    }
 
-                return ResponseEntity.status(HttpStatus.FORBIDDEN)
-                        .body(Map.of("error", "You have exceeded the maximum OTP attempts"));
+    private ResponseEntity<?> recordFailedAttempt(PendingOtp otpAttempt, String approvalId, String phoneNumber, boolean conversational) {
+        // Attempts recorded including this one, null when the OTP was no longer pending
+        Integer attempts = transactionTemplate.execute(status -> {
+            if (approvalOtpRepository.recordFailedAttempt(otpAttempt.otpId(), otpStatut.PENDING, otpStatut.DENIED, maxAttempts) == 0) {
+                return null;
             }
-
-            approvalOtpRepository.save(otpAttempt);
+            int recorded = approvalOtpRepository.findInvalidAttempts(otpAttempt.otpId());
+            if (recorded >= maxAttempts) {
+                // The rest of the session shares the code, it is denied with it
+                approvalOtpRepository.transitionSession(phoneNumber, otpAttempt.verificationSid(), otpStatut.PENDING, otpStatut.DENIED);
+                otpMessage.resendOtpMessage(phoneNumber, otpResendMappingService.createResendMapping(approvalId, phoneNumber).getMappingId());
+            }
+            return recorded;
+        });
+
+        if (attempts == null) {
+            // Another attempt denied, approved or expired the OTP in the meantime
+            pendingOtpIndex.invalidate(phoneNumber);
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "This OTP is no longer valid"));
+        }
+        logger.warn("Invalid OTP attempt {} for approval ID {}", attempts, approvalId);
+        if (attempts >= maxAttempts) {
+            pendingOtpIndex.invalidate(phoneNumber);
+            logger.error("Exceeded maximum OTP attempts for approval ID {}", approvalId);
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("error", "You have exceeded the maximum OTP attempts"));
+        }
+        if (conversational) {
             otpMessage.sendTryAgain(phoneNumber);
-            return ResponseEntity.badRequest().body(Map.of("error", "Invalid OTP. Please try again."));
-
         }
+        return ResponseEntity.badRequest().body(Map.of("error", "Invalid OTP. Please try again."));
     }
 }
@@ -0,0 +1,276 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.json.JSONObject;
+import org.sid.serviceapprobationwhatsapp.entities.OutboxMessage;
+import org.sid.serviceapprobationwhatsapp.enums.outboxStatut;
+import org.sid.serviceapprobationwhatsapp.enums.outboxType;
+import org.sid.serviceapprobationwhatsapp.enums.statut;
+import org.sid.serviceapprobationwhatsapp.repositories.ApprovalRequestRepository;
+import org.sid.serviceapprobationwhatsapp.repositories.OutboxMessageRepository;
+import org.sid.serviceapprobationwhatsapp.service.MessageIdMappingService;
+import org.sid.serviceapprobationwhatsapp.service.OutboxService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+@Service
+public class OutboxServiceImpl implements OutboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxServiceImpl.class);
+
+    private static final Set<outboxStatut> CLAIMABLE = EnumSet.of(outboxStatut.PENDING, outboxStatut.SENDING);
+    private static final Set<outboxStatut> FINISHED = EnumSet.of(outboxStatut.SENT, outboxStatut.FAILED);
+    private static final Set<statut> FINAL_DECISIONS = EnumSet.of(statut.Approuver, statut.Rejeter);
+    // Sends whose body carries a secret (the locally generated code), replaced once the entry is finished
+    private static final Set<outboxType> REDACTED_TYPES = EnumSet.of(outboxType.OTP);
+    private static final String REDACTED_PAYLOAD = "{\"redacted\":true}";
+
+    @Value("${whatsapp.api.url}")
+    private String whatsappApiUrl;
+
+    @Value("${whatsapp.api.token}")
+    private String whatsappApiToken;
+
+    @Value("${outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${outbox.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${outbox.backoff-ms:2000}")
+    private long backoffMs;
+
+    @Value("${outbox.lease-seconds:60}")
+    private long leaseSeconds;
+
+    // How long SENT and FAILED entries are kept for inspection before the purge removes them
+    @Value("${outbox.retention-hours:72}")
+    private long retentionHours;
+
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final MessageIdMappingService messageIdMappingService;
+    private final ApprovalRequestRepository approvalRequestRepository;
+    private final RestTemplate restTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TaskExecutor outboxExecutor;
+    private final ObjectMapper objectMapper;
+
+    public OutboxServiceImpl(OutboxMessageRepository outboxMessageRepository,
+                             MessageIdMappingService messageIdMappingService,
+                             ApprovalRequestRepository approvalRequestRepository,
+                             RestTemplate restTemplate,
+                             TransactionTemplate transactionTemplate,
+                             @Qualifier("outboxExecutor") TaskExecutor outboxExecutor,
+                             ObjectMapper objectMapper) {
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.messageIdMappingService = messageIdMappingService;
+        this.approvalRequestRepository = approvalRequestRepository;
+        this.restTemplate = restTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.outboxExecutor = outboxExecutor;
+        this.objectMapper = objectMapper;
+    }
+
+    // Joins the caller's transaction so the send is only visible to the dispatcher once the state change commits
+    @Override
+    @Transactional(propagation = Propagation.REQUIRED)
+    public OutboxMessage enqueue(outboxType type, String recipientNumber, String approvalId, String payload) {
+        LocalDateTime now = LocalDateTime.now();
+        OutboxMessage message = OutboxMessage.builder()
+                .type(type)
+                .recipientNumber(recipientNumber)
+                .approvalId(approvalId)
+                .payload(payload)
+                .status(outboxStatut.PENDING)
+                .attempts(0)
+                .createdAt(now)
+                .nextAttemptAt(now)
+                .build();
+        OutboxMessage saved = outboxMessageRepository.save(message);
+        logger.debug("Queued {} message {} for {}", type, saved.getId(), recipientNumber);
+        return saved;
+    }
+
+    @Override
+    public ResponseEntity<String> accepted(OutboxMessage message) {
+        JSONObject body = new JSONObject()
+                .put("outboxId", message.getId())
+                .put("status", message.getStatus().name());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(body.toString());
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${outbox.poll-interval-ms:500}")
+    public int dispatchDueMessages() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> dueIds = outboxMessageRepository.findDueIds(CLAIMABLE, now, PageRequest.of(0, batchSize));
+        if (dueIds.isEmpty()) {
+            return 0;
+        }
+
+        // One claim for the whole due set, the token then identifies exactly the rows this poll won
+        String token = UUID.randomUUID().toString();
+        List<OutboxMessage> claimed = transactionTemplate.execute(status -> {
+            int count = outboxMessageRepository.claim(dueIds, CLAIMABLE, outboxStatut.SENDING, token, now, now.plusSeconds(leaseSeconds));
+            return count == 0 ? List.<OutboxMessage>of()
+                    : outboxMessageRepository.findByClaimTokenAndStatusOrderById(token, outboxStatut.SENDING);
+        });
+        if (claimed == null || claimed.isEmpty()) {
+            return 0; // Taken by another node
+        }
+
+        int dispatched = 0;
+        for (OutboxMessage message : claimed) {
+            try {
+                outboxExecutor.execute(() -> send(message, token));
+                dispatched++;
+            } catch (TaskRejectedException e) {
+                // Workers saturated, the leases expire and the rest is claimed again later
+                logger.warn("Outbox workers saturated, deferring {} message(s)", claimed.size() - dispatched);
+                break;
+            }
+        }
+        return dispatched;
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${outbox.purge-interval-ms:3600000}")
+    public int purgeFinishedMessages() {
+        LocalDateTime before = LocalDateTime.now().minusHours(retentionHours);
+        Integer purged = transactionTemplate.execute(status -> outboxMessageRepository.deleteFinished(FINISHED, before));
+        if (purged != null && purged > 0) {
+            logger.info("Purged {} sent or failed outbox messages", purged);
+        }
+        return purged == null ? 0 : purged;
+    }
+
+    // message is the snapshot read at claim time, every write-back is conditional on still holding the claim
+    private void send(OutboxMessage message, String token) {
+        String messageId;
+        try {
+            HttpEntity<String> request = new HttpEntity<>(message.getPayload(), createHeaders());
+            ResponseEntity<String> response = restTemplate.postForEntity(whatsappApiUrl, request, String.class);
+            messageId = extractMessageId(response.getBody());
+        } catch (Exception e) {
+            markFailed(message, token, e);
+            return;
+        }
+        // Delivered from here on: nothing below may send the message back to PENDING
+        markSent(message, token, messageId);
+    }
+
+    private void markSent(OutboxMessage message, String token, String messageId) {
+        Integer updated = transactionTemplate.execute(status -> outboxMessageRepository.markSent(
+                message.getId(), token, outboxStatut.SENDING, outboxStatut.SENT, messageId, LocalDateTime.now(),
+                REDACTED_TYPES, REDACTED_PAYLOAD));
+        if (updated == null || updated == 0) {
+            // The lease ran out mid-send and another worker claimed the entry, it owns the bookkeeping now
+            logger.warn("Outbox message {} ({}) sent after its lease ran out, messageId={}",
+                    message.getId(), message.getType(), messageId);
+            return;
+        }
+        logger.info("Outbox message {} ({}) sent to {}, messageId={}",
+                message.getId(), message.getType(), message.getRecipientNumber(), messageId);
+
+        if (messageId == null || message.getApprovalId() == null) {
+            return;
+        }
+        // Bookkeeping failures are logged only, a retry would deliver the message to the approver a second time
+        try {
+            if (message.getType() == outboxType.APPROVAL || message.getType() == outboxType.COMMENT) {
+                messageIdMappingService.storeMapping(messageId, message.getApprovalId());
+            }
+            if (message.getType() == outboxType.APPROVAL) {
+                // Written directly rather than through ApprovalService (which queues OTP prompts here):
+                // Pending is bookkeeping only, no callback and no event, and never overrides a final decision
+                transactionTemplate.execute(status -> approvalRequestRepository.updateDecision(
+                        message.getApprovalId(), statut.Pending, Boolean.TRUE, FINAL_DECISIONS));
+            }
+        } catch (Exception e) {
+            logger.error("Outbox message {} sent, but recording it for approval {} failed: {}",
+                    message.getId(), message.getApprovalId(), e.getMessage());
+        }
+    }
+
+    private void markFailed(OutboxMessage message, String token, Exception e) {
+        // A 4xx (other than throttling) will not get better by retrying
+        boolean permanent = e instanceof HttpClientErrorException clientError
+                && clientError.getStatusCode().value() != HttpStatus.TOO_MANY_REQUESTS.value();
+        String error = truncate(e.getMessage());
+        // attempts only changes under a claim, the value read at claim time is current
+        int attempts = message.getAttempts() + 1;
+        long delay = backoffMs * (1L << Math.min(attempts - 1, 10));
+        LocalDateTime nextAttemptAt = LocalDateTime.now().plusNanos(delay * 1_000_000);
+
+        int[] counts = transactionTemplate.execute(status -> new int[]{
+                outboxMessageRepository.markFailed(message.getId(), token, outboxStatut.SENDING, outboxStatut.FAILED,
+                        permanent, maxAttempts, error, REDACTED_TYPES, REDACTED_PAYLOAD),
+                outboxMessageRepository.reschedule(message.getId(), token, outboxStatut.SENDING, outboxStatut.PENDING,
+                        nextAttemptAt, error)});
+        int failed = counts == null ? 0 : counts[0];
+        int retried = counts == null ? 0 : counts[1];
+
+        if (failed + retried == 0) {
+            logger.warn("Outbox message {} ({}) failed after its lease ran out, left to the worker that reclaimed it: {}",
+                    message.getId(), message.getType(), e.getMessage());
+        } else if (failed > 0) {
+            logger.error("Outbox message {} ({}) to {} failed after {} attempt(s): {}",
+                    message.getId(), message.getType(), message.getRecipientNumber(), attempts, e.getMessage());
+        } else {
+            logger.warn("Outbox message {} ({}) attempt {} failed, retrying in {} ms: {}",
+                    message.getId(), message.getType(), attempts, delay, e.getMessage());
+        }
+    }
+
+    private HttpHeaders createHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.add("Authorization", "Bearer " + whatsappApiToken);
+        return headers;
+    }
+
+    private String extractMessageId(String jsonResponse) {
+        if (jsonResponse == null) {
+            return null;
+        }
+        try {
+            JsonNode messages = objectMapper.readTree(jsonResponse).path("messages");
+            String messageId = messages.path(0).path("id").asText();
+            return messageId.isEmpty() ? null : messageId;
+        } catch (Exception e) {
+            logger.warn("Could not parse Graph API response: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static String truncate(String value) {
+        if (value == null) {
+            return null;
+        }
+        return value.length() <= 1000 ? value : value.substring(0, 1000);
+    }
+}
@@ -0,0 +1,83 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import org.sid.serviceapprobationwhatsapp.entities.ApprovalPayload;
+import org.sid.serviceapprobationwhatsapp.entities.ApprovalRequest;
+import org.sid.serviceapprobationwhatsapp.enums.payloadKind;
+import org.sid.serviceapprobationwhatsapp.repositories.ApprovalPayloadRepository;
+import org.sid.serviceapprobationwhatsapp.repositories.ApprovalRequestRepository;
+import org.sid.serviceapprobationwhatsapp.service.PayloadStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Small payloads stay in the approval_requests row (encoded by PayloadConverter),
+ * larger ones go to approval_payloads so the hot row stays narrow. A null inline column
+ * means the payload was spilled: registration always stores at least the JSON "null".
+ */
+@Service
+public class PayloadStoreImpl implements PayloadStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(PayloadStoreImpl.class);
+
+    // The inline columns are BLOBs
+    private static final int MAX_INLINE_BYTES = 65_000;
+
+    private final ApprovalRequestRepository approvalRequestRepository;
+    private final ApprovalPayloadRepository approvalPayloadRepository;
+    private final int inlineMaxBytes;
+
+    public PayloadStoreImpl(ApprovalRequestRepository approvalRequestRepository,
+                            ApprovalPayloadRepository approvalPayloadRepository,
+                            @Value("${payload.inline-max-bytes:2048}") int inlineMaxBytes) {
+        this.approvalRequestRepository = approvalRequestRepository;
+        this.approvalPayloadRepository = approvalPayloadRepository;
+        this.inlineMaxBytes = Math.min(inlineMaxBytes, MAX_INLINE_BYTES);
+    }
+
+    @Override
+    public void attach(ApprovalRequest approvalRequest, payloadKind kind, String json) {
+        // Measured on the JSON itself: cheap, and what the converter compresses is at most this size
+        int size = json.getBytes(StandardCharsets.UTF_8).length;
+        if (size <= inlineMaxBytes) {
+            setInline(approvalRequest, kind, json);
+            return;
+        }
+        setInline(approvalRequest, kind, null);
+        approvalRequest.getPayloads().add(ApprovalPayload.builder()
+                .approvalRequest(approvalRequest)
+                .kind(kind)
+                .content(json)
+                .build());
+        logger.debug("{} payload of {} bytes spilled to approval_payloads", kind, size);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public String read(String approvalId, payloadKind kind) {
+        ApprovalRequest approvalRequest = approvalRequestRepository.findById(approvalId).orElse(null);
+        if (approvalRequest == null) {
+            return null;
+        }
+        // Touching the lazy attribute loads (and decodes) that column only
+        String inline = kind == payloadKind.DATA ? approvalRequest.getData() : approvalRequest.getMetadata();
+        if (inline != null) {
+            return inline;
+        }
+        return approvalPayloadRepository.findByApprovalRequest_IdAndKind(approvalId, kind)
+                .map(ApprovalPayload::getContent)
+                .orElse(null);
+    }
+
+    private static void setInline(ApprovalRequest approvalRequest, payloadKind kind, String json) {
+        if (kind == payloadKind.DATA) {
+            approvalRequest.setData(json);
+        } else {
+            approvalRequest.setMetadata(json);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.sid.serviceapprobationwhatsapp.dto.PendingOtp;
+import org.sid.serviceapprobationwhatsapp.entities.ApprovalOTP;
+import org.sid.serviceapprobationwhatsapp.enums.otpStatut;
+import org.sid.serviceapprobationwhatsapp.repositories.ApprovalOtpRepository;
+import org.sid.serviceapprobationwhatsapp.service.PendingOtpIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Live pending OTPs keyed by normalized phone number, so the webhook text path skips the ORDER BY lookup.
+ * Entries are immutable {@link PendingOtp} snapshots, written by the OTP service once an OTP is committed
+ * and dropped on every status change; any miss falls back to the DB, which stays the source of truth:
+ * the OTP may have been issued on another node, or the entry evicted.
+ * A DB miss is remembered for {@code otp.index.negative-ttl-seconds}, so a flood of texts from numbers
+ * with nothing pending does not reach the DB. An OTP issued here clears that entry right away, one issued
+ * on another node is seen once it lapses. The index is rebuilt from approval_otp on startup.
+ */
+@Service
+public class PendingOtpIndexImpl implements PendingOtpIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(PendingOtpIndexImpl.class);
+
+    private final Map<String, PendingOtp> pendingByPhone = new ConcurrentHashMap<>();
+    private final Cache<String, Boolean> nothingPending;
+    private final ApprovalOtpRepository approvalOtpRepository;
+
+    public PendingOtpIndexImpl(@Value("${otp.index.negative-ttl-seconds:5}") long negativeTtlSeconds,
+                               @Value("${otp.index.max-negative-entries:100000}") long maxNegativeEntries,
+                               ApprovalOtpRepository approvalOtpRepository,
+                               MeterRegistry meterRegistry) {
+        this.approvalOtpRepository = approvalOtpRepository;
+        this.nothingPending = Caffeine.newBuilder()
+                .maximumSize(maxNegativeEntries)
+                .expireAfterWrite(Duration.ofSeconds(negativeTtlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, nothingPending, "otp.pending.index.misses");
+        meterRegistry.gaugeMapSize("otp.pending.index.size", List.of(), pendingByPhone);
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        approvalOtpRepository.findByStatusAndExpirationAfter(otpStatut.PENDING, LocalDateTime.now())
+                .forEach(otp -> putIfNewer(PendingOtp.of(otp)));
+        logger.info("Pending OTP index rebuilt: {} pending OTPs", pendingByPhone.size());
+    }
+
+    @Override
+    public Optional<PendingOtp> findPending(String phoneNumber) {
+        if (phoneNumber == null) {
+            return Optional.empty();
+        }
+        String key = normalize(phoneNumber);
+        PendingOtp otp = pendingByPhone.get(key);
+        if (otp != null) {
+            return Optional.of(otp);
+        }
+        if (nothingPending.getIfPresent(key) != null) {
+            return Optional.empty();
+        }
+
+        // Written by another node, evicted, or never seen here: the DB is the source of truth
+        Optional<PendingOtp> fromDb = approvalOtpRepository.findTopByRecipientNumberAndStatusOrderByCreatedAtDesc(key, otpStatut.PENDING)
+                .map(PendingOtp::of);
+        if (fromDb.isPresent()) {
+            putIfNewer(fromDb.get());
+        } else {
+            logger.debug("No pending OTP for {}", key);
+            nothingPending.put(key, Boolean.TRUE);
+        }
+        return fromDb;
+    }
+
+    @Override
+    public void put(ApprovalOTP otp) {
+        String key = normalize(otp.getRecipientNumber());
+        nothingPending.invalidate(key);
+        if (otp.getStatus() == otpStatut.PENDING) {
+            putIfNewer(PendingOtp.of(otp));
+        } else {
+            pendingByPhone.remove(key);
+        }
+    }
+
+    @Override
+    public void invalidate(String phoneNumber) {
+        if (phoneNumber != null) {
+            pendingByPhone.remove(normalize(phoneNumber));
+        }
+    }
+
+    // Entries past their expiry are dropped, a late text then takes the DB path and gets the expired handling
+    @Scheduled(fixedDelayString = "${otp.index.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        pendingByPhone.values().removeIf(otp -> otp.expiration() != null && now.isAfter(otp.expiration()));
+    }
+
+    private void putIfNewer(PendingOtp otp) {
+        pendingByPhone.merge(normalize(otp.recipientNumber()), otp,
+                (current, candidate) -> candidate.createdAt().isBefore(current.createdAt()) ? current : candidate);
+    }
+
+    // OTPs are stored as +<digits>, webhook senders arrive without the plus
+    private static String normalize(String phoneNumber) {
+        String trimmed = phoneNumber.trim();
+        return trimmed.startsWith("+") ? trimmed : "+" + trimmed;
+    }
+}
@@ -0,0 +1,142 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel: {@code levels} wheels of {@code wheelSize} slots, level {@code l} slots spanning
+ * {@code wheelSize^l} ticks. Scheduling, cancelling and expiring a timer are O(1), each timer is cascaded at most
+ * once per level. Deadlines past the top level are parked in its farthest slot and re-placed when that slot cascades.
+ */
+final class TimingWheel<T> {
+
+    // Handle returned by schedule, state guarded by the wheel
+    static final class Timer<T> {
+        private final long deadlineTick;
+        private final T item;
+        private boolean cancelled;
+        private boolean expired;
+
+        private Timer(long deadlineTick, T item) {
+            this.deadlineTick = deadlineTick;
+            this.item = item;
+        }
+    }
+
+    private final long tickMs;
+    private final int bits;
+    private final int mask;
+    private final int levels;
+    private final int wheelSize;
+    // Level l, slot i at l * wheelSize + i
+    private final List<ArrayDeque<Timer<T>>> slots;
+    private final List<Timer<T>> overdue = new ArrayList<>();
+    private long currentTick;
+    private int size;
+
+    TimingWheel(long tickMs, int wheelSize, int levels, long startMs) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size must be a power of two: " + wheelSize);
+        }
+        this.tickMs = tickMs;
+        this.bits = Integer.numberOfTrailingZeros(wheelSize);
+        this.mask = wheelSize - 1;
+        this.levels = levels;
+        this.wheelSize = wheelSize;
+        this.slots = new ArrayList<>(levels * wheelSize);
+        for (int slot = 0; slot < levels * wheelSize; slot++) {
+            slots.add(new ArrayDeque<>());
+        }
+        this.currentTick = startMs / tickMs;
+    }
+
+    synchronized Timer<T> schedule(long deadlineMs, T item) {
+        // Rounded up so a timer never fires before its deadline
+        Timer<T> timer = new Timer<>((deadlineMs + tickMs - 1) / tickMs, item);
+        place(timer);
+        size++;
+        return timer;
+    }
+
+    // False when the timer already expired or was cancelled. It stays in its slot and is dropped when the slot is drained
+    synchronized boolean cancel(Timer<T> timer) {
+        if (timer.cancelled || timer.expired) {
+            return false;
+        }
+        timer.cancelled = true;
+        size--;
+        return true;
+    }
+
+    // Moves the wheel to nowMs and returns every timer whose deadline has passed
+    synchronized List<T> advance(long nowMs) {
+        long targetTick = nowMs / tickMs;
+        List<T> due = new ArrayList<>();
+        drainOverdue(due);
+        while (currentTick < targetTick) {
+            currentTick++;
+            // Cascade from the top so timers fall through every level they have reached this tick
+            for (int level = levels - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (level * bits)) - 1)) == 0) {
+                    ArrayDeque<Timer<T>> bucket = slot(level, currentTick);
+                    Timer<T> timer;
+                    while ((timer = bucket.poll()) != null) {
+                        if (!timer.cancelled) {
+                            place(timer);
+                        }
+                    }
+                }
+            }
+            ArrayDeque<Timer<T>> bucket = slot(0, currentTick);
+            Timer<T> timer;
+            while ((timer = bucket.poll()) != null) {
+                expire(timer, due);
+            }
+            drainOverdue(due);
+        }
+        size -= due.size();
+        return due;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private void drainOverdue(List<T> due) {
+        for (Timer<T> timer : overdue) {
+            expire(timer, due);
+        }
+        overdue.clear();
+    }
+
+    private void expire(Timer<T> timer, List<T> due) {
+        if (!timer.cancelled) {
+            timer.expired = true;
+            due.add(timer.item);
+        }
+    }
+
+    private void place(Timer<T> timer) {
+        long delta = timer.deadlineTick - currentTick;
+        if (delta <= 0) {
+            overdue.add(timer);
+            return;
+        }
+        for (int level = 0; level < levels; level++) {
+            if (delta < 1L << ((level + 1) * bits)) {
+                slot(level, timer.deadlineTick).add(timer);
+                return;
+            }
+        }
+        // Beyond the top level: park in the slot just before the wheel wraps, it is re-placed on cascade
+        int top = levels - 1;
+        long parkedTick = currentTick + (1L << (levels * bits)) - (1L << (top * bits));
+        slot(top, parkedTick).add(timer);
+    }
+
+    // The slot of the given level that tick falls into
+    private ArrayDeque<Timer<T>> slot(int level, long tick) {
+        return slots.get(level * wheelSize + (int) ((tick >>> (level * bits)) & mask));
+    }
+}
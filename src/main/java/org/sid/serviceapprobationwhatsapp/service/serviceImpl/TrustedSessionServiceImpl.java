@@ -0,0 +1,113 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.sid.serviceapprobationwhatsapp.entities.TrustedSession;
+import org.sid.serviceapprobationwhatsapp.repositories.TrustedSessionRepository;
+import org.sid.serviceapprobationwhatsapp.service.TrustedSessionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Trusted-approver window: within {@code trusted-session.ttl-minutes} of a successful OTP check, new approvals
+ * skip the OTP and go straight to the interactive message. Sessions live in trusted_sessions (shared by all nodes,
+ * purged on a schedule); a short-lived cache in front bounds how long a revocation takes to reach other nodes.
+ * A TTL of 0 disables the feature.
+ */
+@Service
+public class TrustedSessionServiceImpl implements TrustedSessionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrustedSessionServiceImpl.class);
+
+    private final Duration ttl;
+    private final Cache<String, TrustedSession> sessions;
+    private final TrustedSessionRepository trustedSessionRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public TrustedSessionServiceImpl(@Value("${trusted-session.ttl-minutes:0}") long ttlMinutes,
+                                     @Value("${trusted-session.cache-seconds:30}") long cacheSeconds,
+                                     @Value("${trusted-session.cache.max-size:10000}") long maxSize,
+                                     TrustedSessionRepository trustedSessionRepository,
+                                     TransactionTemplate transactionTemplate,
+                                     MeterRegistry meterRegistry) {
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.trustedSessionRepository = trustedSessionRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(cacheSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, sessions, "trusted.sessions");
+    }
+
+    @Override
+    public void open(String phoneNumber, String verificationSid) {
+        if (ttl.isZero()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        TrustedSession session = TrustedSession.builder()
+                .phoneNumber(phoneNumber)
+                .verificationSid(verificationSid)
+                .createdAt(now)
+                .expiresAt(now.plus(ttl))
+                .build();
+        transactionTemplate.executeWithoutResult(status -> trustedSessionRepository.save(session));
+        sessions.put(phoneNumber, session);
+        logger.info("Trusted session opened for {} until {}", phoneNumber, session.getExpiresAt());
+    }
+
+    @Override
+    public boolean isTrusted(String phoneNumber) {
+        if (ttl.isZero() || phoneNumber == null) {
+            return false;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        TrustedSession session = sessions.getIfPresent(phoneNumber);
+        if (session == null) {
+            session = trustedSessionRepository.findByPhoneNumberAndExpiresAtAfter(phoneNumber, now).orElse(null);
+            if (session == null) {
+                return false;
+            }
+            sessions.put(phoneNumber, session);
+        }
+        return now.isBefore(session.getExpiresAt());
+    }
+
+    @Override
+    public boolean revoke(String phoneNumber) {
+        sessions.invalidate(phoneNumber);
+        Boolean revoked = transactionTemplate.execute(status -> {
+            if (!trustedSessionRepository.existsById(phoneNumber)) {
+                return false;
+            }
+            trustedSessionRepository.deleteById(phoneNumber);
+            return true;
+        });
+        if (Boolean.TRUE.equals(revoked)) {
+            logger.info("Trusted session revoked for {}", phoneNumber);
+        }
+        return Boolean.TRUE.equals(revoked);
+    }
+
+    @Scheduled(fixedDelayString = "${trusted-session.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        if (ttl.isZero()) {
+            return;
+        }
+        Integer purged = transactionTemplate.execute(status -> trustedSessionRepository.deleteExpired(LocalDateTime.now()));
+        if (purged != null && purged > 0) {
+            logger.debug("Purged {} expired trusted sessions", purged);
+        }
+    }
+}
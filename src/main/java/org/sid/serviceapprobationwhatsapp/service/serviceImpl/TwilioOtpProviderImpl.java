@@ -0,0 +1,32 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import org.sid.serviceapprobationwhatsapp.dto.OtpChallenge;
+import org.sid.serviceapprobationwhatsapp.dto.PendingOtp;
+import org.sid.serviceapprobationwhatsapp.service.OtpProvider;
+import org.sid.serviceapprobationwhatsapp.service.TwilioService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * Twilio Verify generates, sends (SMS) and checks the code: one remote call to issue, one to verify.
+ */
+@Service
+@ConditionalOnProperty(name = "otp.provider", havingValue = "twilio", matchIfMissing = true)
+public class TwilioOtpProviderImpl implements OtpProvider {
+
+    private final TwilioService twilioService;
+
+    public TwilioOtpProviderImpl(TwilioService twilioService) {
+        this.twilioService = twilioService;
+    }
+
+    @Override
+    public OtpChallenge issue(String phoneNumber) {
+        return OtpChallenge.delivered(twilioService.sendVerificationCode(phoneNumber));
+    }
+
+    @Override
+    public boolean verify(PendingOtp otp, String code) {
+        return twilioService.checkVerificationCode(otp.recipientNumber(), code, otp.verificationSid());
+    }
+}
@@ -6,8 +6,6 @@ import com.twilio.http.TwilioRestClient;
 import com.twilio.rest.verify.v2.service.Verification;
 import com.twilio.rest.verify.v2.service.VerificationCheck;
 import jakarta.annotation.PostConstruct;
-import org.sid.serviceapprobationwhatsapp.enums.otpStatut;
-import org.sid.serviceapprobationwhatsapp.repositories.ApprovalOtpRepository;
 import org.sid.serviceapprobationwhatsapp.service.TwilioService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,14 +28,8 @@ public class TwilioServiceImpl implements TwilioService {
     @Value("${twilio.verify.service.sid}")
     private String verifyServiceSid;
 
-    private final ApprovalOtpRepository approvalOtpRepository;
-
     Logger logger = LoggerFactory.getLogger(TwilioServiceImpl.class);
 
-    public TwilioServiceImpl(ApprovalOtpRepository approvalOtpRepository) {
-        this.approvalOtpRepository = approvalOtpRepository;
-    }
-
     // Initialize Twilio de manière global pour la class
     @PostConstruct // Use @PostConstruct for initialization
     public void init() {
@@ -57,10 +49,7 @@ public class TwilioServiceImpl implements TwilioService {
             throw new IllegalArgumentException("Invalid phone number: " + phoneNumber);
         }
 
-        // Expire any previous pending OTPs before sending a new one
-        approvalOtpRepository.updateStatusByPhoneNumber(phoneNumber, otpStatut.PENDING, otpStatut.EXPIRED);
-
-
+        // Previous pending OTPs are expired by the caller, in its own short transaction
         try {
             Verification verification = Verification.creator(
                             verifyServiceSid,
@@ -69,7 +58,7 @@ public class TwilioServiceImpl implements TwilioService {
                     .create();
 
 
-            System.out.println("Verification SID: " + verification.getSid()); // Log the SID
+            logger.debug("Verification {} created", verification.getSid());
             return verification.getSid(); // Track and refer to that particular verification
 
         } catch (ApiException e) {
@@ -105,7 +94,7 @@ public class TwilioServiceImpl implements TwilioService {
             return "approved".equals(verificationCheck.getStatus());
 
         } catch (ApiException e) {
-            System.err.println("Error checking verification code: " + e.getMessage());
+            logger.warn("Error checking verification code {}: {}", verificationSid, e.getMessage());
             return false; // Indicate failure instead of throwing an exception
         }
     }
@@ -0,0 +1,187 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.sid.serviceapprobationwhatsapp.dto.WebhookEvent;
+import org.sid.serviceapprobationwhatsapp.service.WebhookEventParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming decoder for the WhatsApp Cloud API webhook body
+ * ({@code entry[].changes[].value.messages[] / statuses[]}).
+ * Only the fields we use are read, everything else is skipped without being materialized.
+ */
+@Service
+public class WebhookEventParserImpl implements WebhookEventParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookEventParserImpl.class);
+
+    private final JsonFactory jsonFactory;
+
+    public WebhookEventParserImpl(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    @Override
+    public List<WebhookEvent> parse(byte[] body) throws IOException {
+        List<WebhookEvent> events = new ArrayList<>();
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Webhook body is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if ("entry".equals(field) && parser.currentToken() == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readEntry(parser, events);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return events;
+    }
+
+    private void readEntry(JsonParser parser, List<WebhookEvent> events) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("changes".equals(field) && parser.currentToken() == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    readChange(parser, events);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readChange(JsonParser parser, List<WebhookEvent> events) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("value".equals(field) && parser.currentToken() == JsonToken.START_OBJECT) {
+                readValue(parser, events);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readValue(JsonParser parser, List<WebhookEvent> events) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("messages".equals(field) && parser.currentToken() == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    WebhookEvent event = readMessage(parser);
+                    if (event != null) {
+                        events.add(event);
+                    }
+                }
+            } else if ("statuses".equals(field) && parser.currentToken() == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    events.add(readStatus(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private WebhookEvent readMessage(JsonParser parser) throws IOException {
+        String id = null;
+        String from = null;
+        String type = null;
+        String textBody = null;
+        String buttonPayload = null;
+        String buttonText = null;
+        String contextId = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "id" -> id = parser.getValueAsString();
+                case "from" -> from = parser.getValueAsString();
+                case "type" -> type = parser.getValueAsString();
+                case "text" -> textBody = token == JsonToken.START_OBJECT ? readStringField(parser, "body") : skip(parser);
+                case "context" -> contextId = token == JsonToken.START_OBJECT ? readStringField(parser, "id") : skip(parser);
+                case "button" -> {
+                    if (token == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String buttonField = parser.currentName();
+                            parser.nextToken();
+                            if ("payload".equals(buttonField)) {
+                                buttonPayload = parser.getValueAsString();
+                            } else if ("text".equals(buttonField)) {
+                                buttonText = parser.getValueAsString();
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    } else {
+                        skip(parser);
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        if ("button".equals(type) && buttonPayload != null) {
+            return new WebhookEvent.ButtonClick(id, from, contextId, buttonPayload, buttonText);
+        }
+        if ("text".equals(type) && textBody != null) {
+            return new WebhookEvent.TextMessage(id, from, textBody);
+        }
+        logger.debug("Ignoring webhook message {} of type {}", id, type);
+        return null;
+    }
+
+    private WebhookEvent readStatus(JsonParser parser) throws IOException {
+        String id = null;
+        String recipientId = null;
+        String status = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "id" -> id = parser.getValueAsString();
+                case "recipient_id" -> recipientId = parser.getValueAsString();
+                case "status" -> status = parser.getValueAsString();
+                default -> parser.skipChildren();
+            }
+        }
+        return new WebhookEvent.Status(id, recipientId, status);
+    }
+
+    // Reads one string field of the current object and consumes the rest of it
+    private String readStringField(JsonParser parser, String name) throws IOException {
+        String value = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (name.equals(field)) {
+                value = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return value;
+    }
+
+    private String skip(JsonParser parser) throws IOException {
+        parser.skipChildren();
+        return null;
+    }
+}
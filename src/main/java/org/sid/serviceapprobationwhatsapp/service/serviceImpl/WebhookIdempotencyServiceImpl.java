@@ -0,0 +1,109 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.sid.serviceapprobationwhatsapp.repositories.ProcessedWebhookMessageRepository;
+import org.sid.serviceapprobationwhatsapp.service.WebhookIdempotencyService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Deduplicates webhook redeliveries on the inbound WhatsApp message id.
+ * A size-capped, time-expiring Caffeine cache (W-TinyLFU eviction) answers on the node that saw the message;
+ * with {@code webhook.idempotency.db-enabled} (the default) first sightings are also claimed in a shared table,
+ * so a redelivery landing on another node, or a webhook journal replay after a restart, is caught too.
+ */
+@Service
+public class WebhookIdempotencyServiceImpl implements WebhookIdempotencyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookIdempotencyServiceImpl.class);
+
+    private final Cache<String, Boolean> seenMessages;
+    private final Duration ttl;
+    private final boolean dbEnabled;
+    private final ProcessedWebhookMessageRepository processedWebhookMessageRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter duplicates;
+
+    public WebhookIdempotencyServiceImpl(@Value("${webhook.idempotency.max-size:100000}") long maxSize,
+                                         @Value("${webhook.idempotency.ttl-minutes:1440}") long ttlMinutes,
+                                         @Value("${webhook.idempotency.db-enabled:true}") boolean dbEnabled,
+                                         ProcessedWebhookMessageRepository processedWebhookMessageRepository,
+                                         TransactionTemplate transactionTemplate,
+                                         MeterRegistry meterRegistry) {
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.dbEnabled = dbEnabled;
+        this.processedWebhookMessageRepository = processedWebhookMessageRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.seenMessages = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        // cache.gets{result=hit} / cache.gets{result=miss} give the duplicate hit rate
+        CaffeineCacheMetrics.monitor(meterRegistry, seenMessages, "webhook.idempotency");
+        this.duplicates = Counter.builder("webhook.duplicates")
+                .description("Redelivered webhook messages short-circuited")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean markIfFirst(String messageId) {
+        if (messageId == null) {
+            return true; // Nothing to key on
+        }
+
+        AtomicBoolean first = new AtomicBoolean(false);
+        seenMessages.get(messageId, id -> {
+            first.set(true);
+            return Boolean.TRUE;
+        });
+
+        if (first.get() && dbEnabled) {
+            Integer inserted = transactionTemplate.execute(status ->
+                    processedWebhookMessageRepository.insertIfAbsent(messageId, LocalDateTime.now()));
+            first.set(inserted != null && inserted > 0);
+        }
+
+        if (!first.get()) {
+            duplicates.increment();
+            logger.info("Duplicate webhook message {} ignored", messageId);
+        }
+        return first.get();
+    }
+
+    // Lets a redelivery through again when handling the first copy failed
+    @Override
+    public void release(String messageId) {
+        if (messageId == null) {
+            return;
+        }
+        seenMessages.invalidate(messageId);
+        if (dbEnabled) {
+            transactionTemplate.executeWithoutResult(status -> processedWebhookMessageRepository.deleteById(messageId));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${webhook.idempotency.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        if (!dbEnabled) {
+            return;
+        }
+        Integer purged = transactionTemplate.execute(status ->
+                processedWebhookMessageRepository.deleteProcessedBefore(LocalDateTime.now().minus(ttl)));
+        if (purged != null && purged > 0) {
+            logger.debug("Purged {} processed webhook message ids", purged);
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.sid.serviceapprobationwhatsapp.service.WebhookJournal;
+import org.sid.serviceapprobationwhatsapp.service.WebhookProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of raw webhook bodies.
+ * <p>
+ * Records are written into fixed-size memory-mapped segment files as
+ * {@code [int length][int crc32][payload]}. A flusher thread forces the active segment to disk
+ * and releases every appender waiting on it in one go (group commit), so the webhook is only
+ * acknowledged once its body is durable. A single consumer thread reads durable records in order,
+ * hands them to the {@link WebhookProcessor} and periodically checkpoints its position; anything
+ * after the last checkpoint is replayed on restart, and the replayed messages are caught by the
+ * message id claims of the webhook idempotency table. A record the consumer cannot read has the
+ * writer seal its segment, so the consumer skips the rest of that segment instead of stalling the journal.
+ */
+@Service
+public class WebhookJournalImpl implements WebhookJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookJournalImpl.class);
+
+    private static final int HEADER_SIZE = 8;
+    private static final int END_OF_SEGMENT = -1;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+
+    @Value("${webhook.journal.dir:data/webhook-journal}")
+    private String directory;
+
+    @Value("${webhook.journal.segment-size-bytes:16777216}")
+    private int segmentSize;
+
+    @Value("${webhook.journal.flush-interval-ms:5}")
+    private long flushIntervalMs;
+
+    @Value("${webhook.journal.checkpoint-interval-ms:200}")
+    private long checkpointIntervalMs;
+
+    @Value("${webhook.journal.stall-backoff-max-ms:1000}")
+    private long stallBackoffMaxMs;
+
+    private final WebhookProcessor webhookProcessor;
+    private final Counter unreadableRecords;
+
+    private Path journalDir;
+    private Path checkpointFile;
+
+    // Writer state, guarded by this
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+    private volatile long appendedSeq;
+
+    // Durability state, guarded by flushLock
+    private final Object flushLock = new Object();
+    private long flushedSeq;
+    private volatile Position durable;
+
+    private volatile boolean running;
+    private Thread flusherThread;
+    private Thread consumerThread;
+
+    private record Position(long segment, int offset) {
+        boolean isBefore(Position other) {
+            return segment < other.segment || (segment == other.segment && offset < other.offset);
+        }
+    }
+
+    public WebhookJournalImpl(WebhookProcessor webhookProcessor, MeterRegistry meterRegistry) {
+        this.webhookProcessor = webhookProcessor;
+        this.unreadableRecords = Counter.builder("webhook.journal.unreadable")
+                .description("Torn or corrupt records whose segment the journal consumer had sealed and skipped")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        journalDir = Paths.get(directory);
+        Files.createDirectories(journalDir);
+        checkpointFile = journalDir.resolve("checkpoint");
+
+        List<Long> segments = listSegments();
+        writeSegment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1);
+        writeBuffer = map(writeSegment, FileChannel.MapMode.READ_WRITE);
+        writeBuffer.position(recoverWritePosition(writeBuffer));
+        durable = new Position(writeSegment, writeBuffer.position());
+        logger.info("Webhook journal opened at {}, segment {} offset {}", journalDir.toAbsolutePath(), writeSegment, writeBuffer.position());
+
+        running = true;
+        flusherThread = new Thread(this::flushLoop, "webhook-journal-flusher");
+        flusherThread.setDaemon(true);
+        flusherThread.start();
+        consumerThread = new Thread(this::consumeLoop, "webhook-journal-consumer");
+        consumerThread.setDaemon(true);
+        consumerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        synchronized (flushLock) {
+            flushLock.notifyAll();
+        }
+        flusherThread.join(5000);
+        consumerThread.join(5000);
+        flush();
+    }
+
+    @Override
+    public void append(byte[] payload) throws IOException {
+        if (payload.length > segmentSize - 2 * HEADER_SIZE) {
+            throw new IOException("Webhook payload of " + payload.length + " bytes does not fit in a journal segment");
+        }
+
+        long seq;
+        synchronized (this) {
+            if (writeBuffer.remaining() < HEADER_SIZE + payload.length + HEADER_SIZE) {
+                roll();
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            int start = writeBuffer.position();
+            writeBuffer.putInt(start + 4, (int) crc.getValue());
+            writeBuffer.put(start + HEADER_SIZE, payload);
+            writeBuffer.putInt(start, payload.length); // Length last: a record is only valid once it is complete
+            writeBuffer.position(start + HEADER_SIZE + payload.length);
+            seq = ++appendedSeq;
+        }
+
+        synchronized (flushLock) {
+            flushLock.notifyAll();
+            while (flushedSeq < seq) {
+                if (!running) {
+                    throw new IOException("Webhook journal is closed");
+                }
+                try {
+                    flushLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for journal flush", e);
+                }
+            }
+        }
+    }
+
+    // Called with the writer lock held; the full segment is forced before the new one takes writes
+    private void roll() throws IOException {
+        writeBuffer.putInt(writeBuffer.position(), END_OF_SEGMENT);
+        writeBuffer.force();
+        writeSegment++;
+        writeBuffer = map(writeSegment, FileChannel.MapMode.READ_WRITE);
+        logger.info("Webhook journal rolled to segment {}", writeSegment);
+    }
+
+    // Seals the segment the consumer is stuck in, unless the writer has already moved past it,
+    // and makes the roll durable so the consumer sees the segment as sealed
+    private void requestRoll(long segment) throws IOException {
+        synchronized (this) {
+            if (writeSegment != segment) {
+                return;
+            }
+            roll();
+        }
+        flush();
+    }
+
+    private void flushLoop() {
+        while (running) {
+            try {
+                synchronized (flushLock) {
+                    while (running && flushedSeq == appendedSeq) {
+                        flushLock.wait(flushIntervalMs);
+                    }
+                }
+                flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Webhook journal flush failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void flush() {
+        long targetSeq;
+        MappedByteBuffer buffer;
+        Position position;
+        synchronized (this) {
+            targetSeq = appendedSeq;
+            buffer = writeBuffer;
+            position = new Position(writeSegment, writeBuffer.position());
+        }
+        // Everything appended up to targetSeq is either in this buffer or in a segment forced on roll
+        buffer.force();
+        synchronized (flushLock) {
+            flushedSeq = Math.max(flushedSeq, targetSeq);
+            // The flusher and a roll requested by the consumer may race, the durable position never goes back
+            if (durable.isBefore(position)) {
+                durable = position;
+            }
+            flushLock.notifyAll();
+        }
+    }
+
+    private void consumeLoop() {
+        Position cursor = readCheckpoint();
+        Position checkpointed = cursor;
+        long lastCheckpointAt = System.currentTimeMillis();
+        long readSegment = -1;
+        ByteBuffer readBuffer = null;
+        Position stalledAt = null;
+        long stallBackoffMs = 1;
+
+        while (running) {
+            try {
+                Position limit = durable;
+                if (System.currentTimeMillis() - lastCheckpointAt >= checkpointIntervalMs && !cursor.equals(checkpointed)) {
+                    writeCheckpoint(cursor, checkpointed);
+                    checkpointed = cursor;
+                    lastCheckpointAt = System.currentTimeMillis();
+                }
+                if (cursor.equals(limit)) {
+                    synchronized (flushLock) {
+                        if (cursor.equals(durable)) {
+                            flushLock.wait(checkpointIntervalMs);
+                        }
+                    }
+                    continue;
+                }
+
+                if (readSegment != cursor.segment()) {
+                    readBuffer = map(cursor.segment(), FileChannel.MapMode.READ_ONLY);
+                    readSegment = cursor.segment();
+                }
+
+                boolean sealed = cursor.segment() < limit.segment();
+                int readable = sealed ? segmentSize : limit.offset();
+                byte[] payload = cursor.offset() + HEADER_SIZE <= readable ? readRecord(readBuffer, cursor.offset(), readable) : null;
+
+                if (payload == null) {
+                    if (sealed) {
+                        cursor = new Position(cursor.segment() + 1, 0);
+                        continue;
+                    }
+                    // Durable bytes that do not form a valid record: they will not change by re-reading them,
+                    // so the writer seals the segment (the rest of it is then skipped). Should the roll fail,
+                    // back off until the writer rolls on its own instead of spinning
+                    if (!cursor.equals(stalledAt)) {
+                        stalledAt = cursor;
+                        stallBackoffMs = 1;
+                        unreadableRecords.increment();
+                        logger.warn("Unreadable webhook journal record at {}:{}, sealing the segment to skip it",
+                                cursor.segment(), cursor.offset());
+                        requestRoll(cursor.segment());
+                        continue;
+                    }
+                    Thread.sleep(stallBackoffMs);
+                    stallBackoffMs = Math.min(Math.max(1, stallBackoffMaxMs), stallBackoffMs * 2);
+                    continue;
+                }
+
+                try {
+                    webhookProcessor.process(payload);
+                } catch (Exception e) {
+                    // A bad event must not block the journal
+                    logger.error("Failed to process journaled webhook at {}:{}: {}", cursor.segment(), cursor.offset(), e.getMessage(), e);
+                }
+                cursor = new Position(cursor.segment(), cursor.offset() + HEADER_SIZE + payload.length);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.error("Webhook journal consumer error: {}", e.getMessage(), e);
+            }
+        }
+        try {
+            writeCheckpoint(cursor, checkpointed);
+        } catch (IOException e) {
+            logger.error("Could not write webhook journal checkpoint: {}", e.getMessage());
+        }
+    }
+
+    // Returns null at the end of the written data or on a torn record
+    private byte[] readRecord(ByteBuffer buffer, int offset, int readable) {
+        int length = buffer.getInt(offset);
+        if (length <= 0 || offset + HEADER_SIZE + length > readable) {
+            return null;
+        }
+        int expectedCrc = buffer.getInt(offset + 4);
+        byte[] payload = new byte[length];
+        buffer.get(offset + HEADER_SIZE, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != expectedCrc) {
+            logger.debug("Corrupt webhook journal record at offset {}", offset);
+            return null;
+        }
+        return payload;
+    }
+
+    private int recoverWritePosition(MappedByteBuffer buffer) {
+        int offset = 0;
+        byte[] payload;
+        while (offset + HEADER_SIZE <= segmentSize && (payload = readRecord(buffer, offset, segmentSize)) != null) {
+            offset += HEADER_SIZE + payload.length;
+        }
+        return offset;
+    }
+
+    private Position readCheckpoint() {
+        List<Long> segments;
+        try {
+            segments = listSegments();
+            if (Files.exists(checkpointFile)) {
+                ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(checkpointFile));
+                Position position = new Position(buffer.getLong(), buffer.getInt());
+                if (segments.contains(position.segment())) {
+                    logger.info("Replaying webhook journal from segment {} offset {}", position.segment(), position.offset());
+                    return position;
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Could not read webhook journal checkpoint, replaying the active segment: {}", e.getMessage());
+            return new Position(writeSegment, 0);
+        }
+        return new Position(segments.isEmpty() ? writeSegment : segments.get(0), 0);
+    }
+
+    private void writeCheckpoint(Position cursor, Position previous) throws IOException {
+        Path tmp = journalDir.resolve("checkpoint.tmp");
+        ByteBuffer buffer = ByteBuffer.allocate(12).putLong(cursor.segment()).putInt(cursor.offset());
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(buffer.flip());
+            channel.force(true);
+        }
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Segments entirely behind the checkpoint are no longer needed
+        for (long segment = previous.segment(); segment < cursor.segment(); segment++) {
+            Files.deleteIfExists(segmentPath(segment));
+        }
+    }
+
+    private MappedByteBuffer map(long segment, FileChannel.MapMode mode) throws IOException {
+        Path path = segmentPath(segment);
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE};
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            return channel.map(mode, 0, segmentSize);
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return journalDir.resolve(String.format("segment-%010d.log", segment));
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            return files.map(path -> SEGMENT_NAME.matcher(path.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import org.sid.serviceapprobationwhatsapp.dto.WebhookEvent;
+import org.sid.serviceapprobationwhatsapp.service.ButtonPayloadRouter;
+import org.sid.serviceapprobationwhatsapp.service.OtpVerification;
+import org.sid.serviceapprobationwhatsapp.service.WebhookEventParser;
+import org.sid.serviceapprobationwhatsapp.service.WebhookIdempotencyService;
+import org.sid.serviceapprobationwhatsapp.service.WebhookProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+// Handles webhook bodies replayed from the journal, off the request thread
+@Service
+public class WebhookProcessorImpl implements WebhookProcessor {
+
+    private final WebhookEventParser webhookEventParser;
+    private final ButtonPayloadRouter buttonPayloadRouter;
+    private final OtpVerification otpVerification;
+    private final WebhookIdempotencyService webhookIdempotencyService;
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookProcessorImpl.class);
+
+    public WebhookProcessorImpl(WebhookEventParser webhookEventParser, ButtonPayloadRouter buttonPayloadRouter, OtpVerification otpVerification, WebhookIdempotencyService webhookIdempotencyService) {
+        this.webhookIdempotencyService = webhookIdempotencyService;
+        this.webhookEventParser = webhookEventParser;
+        this.buttonPayloadRouter = buttonPayloadRouter;
+        this.otpVerification = otpVerification;
+    }
+
+    @Override
+    public void process(byte[] payload) {
+        List<WebhookEvent> events;
+        try {
+            events = webhookEventParser.parse(payload);
+        } catch (Exception e) {
+            logger.warn("Discarding unparseable webhook payload: {}", e.getMessage());
+            return;
+        }
+        logger.debug("Webhook carried {} event(s)", events.size());
+
+        // Every message of a batched delivery is handled, one failure does not drop the others
+        for (WebhookEvent event : events) {
+            // Redelivered clicks and OTP texts stop here, before any DB or remote work
+            boolean deduplicated = !(event instanceof WebhookEvent.Status);
+            if (deduplicated && !webhookIdempotencyService.markIfFirst(event.messageId())) {
+                continue;
+            }
+            try {
+                handle(event);
+            } catch (Exception e) {
+                logger.error("Failed to handle webhook event {}: {}", event.messageId(), e.getMessage(), e);
+                if (deduplicated) {
+                    webhookIdempotencyService.release(event.messageId());
+                }
+            }
+        }
+    }
+
+    private void handle(WebhookEvent event) {
+        if (event instanceof WebhookEvent.ButtonClick click) {
+            buttonPayloadRouter.route(click);
+        } else if (event instanceof WebhookEvent.TextMessage text) {
+            handleText(text);
+        } else if (event instanceof WebhookEvent.Status status) {
+            logger.debug("Message {} to {} is now {}", status.messageId(), status.recipientId(), status.status());
+        }
+    }
+
+    private void handleText(WebhookEvent.TextMessage text) {
+        String messageBody = text.body().trim();
+        if (messageBody.isEmpty()) {
+            logger.warn("OTP is empty in message {}", text.messageId());
+            return;
+        }
+        String phoneNumber = text.from();
+        if (phoneNumber == null) {
+            logger.warn("Phone number is missing in message {}", text.messageId());
+            return;
+        }
+        if (!phoneNumber.startsWith("+")) {
+            phoneNumber = "+" + phoneNumber;
+        }
+        logger.debug("Sender phone number: {}", phoneNumber);
+
+        ResponseEntity<?> result = otpVerification.processOtpVerification(phoneNumber, messageBody);
+        logger.info("OTP verification for {} completed with status {}", phoneNumber, result.getStatusCode());
+    }
+}
@@ -1,64 +1,47 @@
 package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.sid.serviceapprobationwhatsapp.entities.ApprovalRequest;
-import org.sid.serviceapprobationwhatsapp.enums.statut;
+import org.sid.serviceapprobationwhatsapp.entities.OutboxMessage;
+import org.sid.serviceapprobationwhatsapp.enums.outboxType;
 import org.sid.serviceapprobationwhatsapp.repositories.ApprovalRequestRepository;
-import org.sid.serviceapprobationwhatsapp.service.ApprovalService;
-import org.sid.serviceapprobationwhatsapp.service.MessageIdMappingService;
+import org.sid.serviceapprobationwhatsapp.service.ApproverAssignmentService;
+import org.sid.serviceapprobationwhatsapp.service.ButtonTokenService;
+import org.sid.serviceapprobationwhatsapp.service.OutboxService;
 import org.sid.serviceapprobationwhatsapp.service.PayloadCreatorService;
 import org.sid.serviceapprobationwhatsapp.service.WhatsAppService;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 @Service
 public class WhatsAppServiceImpl implements WhatsAppService {
 
-    @Value("${whatsapp.api.url}")
-    private String whatsappApiUrl;
-
-    @Value("${whatsapp.api.token}")
-    private String whatsappApiToken;
-
-    @Autowired
-    private RestTemplate restTemplate;
     private final PayloadCreatorService payloadCreatorService;
     private final ApprovalRequestRepository approvalRequestRepository;
-    private final MessageIdMappingService messageIdMappingService;
-    private final ApprovalService approvalService;
+    private final OutboxService outboxService;
+    private final ButtonTokenService buttonTokenService;
+    private final ApproverAssignmentService approverAssignmentService;
 
-    public WhatsAppServiceImpl(ApprovalRequestRepository approvalRequestRepository, MessageIdMappingService messageIdMappingService, ApprovalService approvalService, PayloadCreatorService payloadCreatorService) {
+    public WhatsAppServiceImpl(ApprovalRequestRepository approvalRequestRepository, OutboxService outboxService, PayloadCreatorService payloadCreatorService, ButtonTokenService buttonTokenService, ApproverAssignmentService approverAssignmentService) {
         this.approvalRequestRepository = approvalRequestRepository;
-        this.messageIdMappingService = messageIdMappingService;
-        this.approvalService = approvalService;
+        this.buttonTokenService = buttonTokenService;
+        this.approverAssignmentService = approverAssignmentService;
+        this.outboxService = outboxService;
         this.payloadCreatorService = payloadCreatorService;
     }
 
-    private HttpHeaders createHeaders() {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.add("Authorization", "Bearer " + whatsappApiToken);
-        return headers;
-    }
-
     @Override
-    public ResponseEntity<String> sendMessageWithInteractiveButtons(ApprovalRequest approvalRequest){
+    public ResponseEntity<String> sendMessageWithInteractiveButtons(ApprovalRequest approvalRequest, String recipientNumber){
 
         // Extract the approvalId from the ApprovalRequest entity
         String approvalId = approvalRequest.getId();
 
+        // Signed token carried by every button, the webhook routes the decision from it without any lookup
+        String token = buttonTokenService.encode(approvalId, approverAssignmentService.positionOf(approvalId, recipientNumber));
+
         // Build the base request JSON
-        JSONObject requestBody = payloadCreatorService.createBaseRequestBody(String.valueOf(approvalRequest.getApprovers()));
+        JSONObject requestBody = payloadCreatorService.createBaseRequestBody(recipientNumber);
         JSONObject template = payloadCreatorService.createTemplateObject("generic_approval");
 
         JSONArray components = new JSONArray();
@@ -82,7 +65,7 @@ public class WhatsAppServiceImpl implements WhatsAppService {
         bodyComponent.put("parameters", bodyParameters);
         components.put(bodyComponent);
 
-        // Create button components using extracted approvalId
+        // Create button components carrying the signed token
 
         // "Approuver" button component
         JSONObject approveButtonComponent = new JSONObject();
@@ -92,7 +75,7 @@ public class WhatsAppServiceImpl implements WhatsAppService {
         JSONArray approveParameters = new JSONArray();
         JSONObject approvePayload = new JSONObject();
         approvePayload.put("type", "payload");
-        approvePayload.put("payload", "APPROVE_" + approvalId);
+        approvePayload.put("payload", "APPROVE_" + token);
         approveParameters.put(approvePayload);
         approveButtonComponent.put("parameters", approveParameters);
         components.put(approveButtonComponent);
@@ -105,7 +88,7 @@ public class WhatsAppServiceImpl implements WhatsAppService {
         JSONArray rejectParameters = new JSONArray();
         JSONObject rejectPayload = new JSONObject();
         rejectPayload.put("type", "payload");
-        rejectPayload.put("payload", "REJECT_" + approvalId);
+        rejectPayload.put("payload", "REJECT_" + token);
         rejectParameters.put(rejectPayload);
         rejectButtonComponent.put("parameters", rejectParameters);
         components.put(rejectButtonComponent);
@@ -118,7 +101,7 @@ public class WhatsAppServiceImpl implements WhatsAppService {
         JSONArray waitingParameters = new JSONArray();
         JSONObject waitingPayload = new JSONObject();
         waitingPayload.put("type", "payload");
-        waitingPayload.put("payload", "ATTENTE_" + approvalId);
+        waitingPayload.put("payload", "ATTENTE_" + token);
         waitingParameters.put(waitingPayload);
         waitingButtonComponent.put("parameters", waitingParameters);
         components.put(waitingButtonComponent);
@@ -127,32 +110,14 @@ public class WhatsAppServiceImpl implements WhatsAppService {
         template.put("components", components);
         requestBody.put("template", template);
 
-        // Send the request
-        HttpEntity<String> request = new HttpEntity<>(requestBody.toString(), createHeaders());
-        ResponseEntity<String> response = restTemplate.postForEntity(whatsappApiUrl, request, String.class);
-
-        String messageId = extractContextIdFromResponse(response.getBody());
-        System.out.println("Extracted Message ID: " + messageId);
-        if (messageId != null) {
-            System.out.println("Storing mapping: Message ID = " + messageId + ", Approval ID = " + approvalId);
-            messageIdMappingService.storeMapping(messageId, approvalId);
-            System.out.println("Map size after storing: " + messageIdMappingService.getMapSize());
-            approvalService.updateStatus(approvalId, statut.Pending);
-            System.out.println("Approval " + approvalId + " is pending !");
-        }
-        return response;
+        // Queue the send, the outbox dispatcher stores the messageId mapping and marks the approval pending once delivered
+        OutboxMessage queued = outboxService.enqueue(outboxType.APPROVAL, recipientNumber, approvalId, requestBody.toString());
+        return outboxService.accepted(queued);
     }
 
     @Override
     public void sendCommentaire(String approvalId, String recipientNumber) {
         // String formattedPhoneNumber = recipientNumber.startsWith("+") ? recipientNumber : ("+" + recipientNumber);
-        System.out.println("Retrieved recipient phone number info: " + recipientNumber);
-
-        RestTemplate restTemplate = new RestTemplate();
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.add("Authorization", "Bearer " + whatsappApiToken);
-
         JSONObject requestBody = payloadCreatorService.createBaseRequestBody(recipientNumber);
         JSONObject template = payloadCreatorService.createTemplateObject("enter_commentaire");
 
@@ -173,47 +138,6 @@ public class WhatsAppServiceImpl implements WhatsAppService {
         requestBody.put("template", template);
         template.put("components", components);
 
-        HttpEntity<String> request = new HttpEntity<>(requestBody.toString(), createHeaders());
-        ResponseEntity<String> response = restTemplate.postForEntity(whatsappApiUrl, request, String.class);
-
-        String messageId = extractContextIdFromResponse(response.getBody());
-        System.out.println("Extracted Message ID: " + messageId);
-        if (messageId != null) {
-            System.out.println("Storing mapping: Message ID = " + messageId + ", Approval ID = " + approvalId);
-            messageIdMappingService.storeMapping(messageId, approvalId);
-            System.out.println("Map size after storing: " + messageIdMappingService.getMapSize());
-            System.out.println("Approval " + approvalId + " is waiting for a comment !");
-        }
-    }
-
-    // Extracting the message id from the approval request to match the decision button to the approval itself
-    @Override
-    public String extractContextIdFromResponse(String jsonResponse) {
-        System.out.println("Received JSON response: " + jsonResponse);
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode rootNode = objectMapper.readTree(jsonResponse);
-
-            if (rootNode.has("messages") && rootNode.get("messages").isArray() && !rootNode.get("messages").isEmpty()) {
-                JsonNode messagesNode = rootNode.get("messages").get(0);
-                System.out.println("Messages node found: " + messagesNode.toString());
-
-                // Extract the message ID
-                String messageId = messagesNode.path("id").asText();
-                if (!messageId.isEmpty()) {
-                    System.out.println("Extracted message ID: " + messageId);
-                    return messageId;
-                } else {
-                    System.out.println("Message ID is empty in the JSON response.");
-                    return null;
-                }
-            } else {
-                System.out.println("No messages found in the JSON response or messages array is empty.");
-                return null;
-            }
-        } catch (JsonProcessingException e) {
-            System.out.println("Error parsing JSON response: " + e.getMessage());
-            return null;
-        }
+        outboxService.enqueue(outboxType.COMMENT, recipientNumber, approvalId, requestBody.toString());
     }
 }
@@ -1,30 +1,41 @@
 package org.sid.serviceapprobationwhatsapp.web;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
+import org.sid.serviceapprobationwhatsapp.dto.ApprovalFilter;
 import org.sid.serviceapprobationwhatsapp.dto.ApprovalRequestDTO;
-import org.sid.serviceapprobationwhatsapp.entities.ApprovalOTP;
+import org.sid.serviceapprobationwhatsapp.dto.ApproverNotificationResult;
+import org.sid.serviceapprobationwhatsapp.dto.BatchItemResult;
+import org.sid.serviceapprobationwhatsapp.dto.RegistrationResult;
 import org.sid.serviceapprobationwhatsapp.entities.ApprovalRequest;
 import org.sid.serviceapprobationwhatsapp.entities.VerificationRequest;
-import org.sid.serviceapprobationwhatsapp.enums.otpStatut;
 import org.sid.serviceapprobationwhatsapp.enums.statut;
-import org.sid.serviceapprobationwhatsapp.repositories.ApprovalOtpRepository;
-import org.sid.serviceapprobationwhatsapp.repositories.ApprovalRequestRepository;
+import org.sid.serviceapprobationwhatsapp.exception.IdempotencyKeyConflictException;
+import org.sid.serviceapprobationwhatsapp.ids.UuidV7;
+import org.sid.serviceapprobationwhatsapp.service.ApprovalFanOutService;
+import org.sid.serviceapprobationwhatsapp.service.ApprovalQueryService;
+import org.sid.serviceapprobationwhatsapp.service.ApprovalRegistrationService;
 import org.sid.serviceapprobationwhatsapp.service.ApprovalService;
+import org.sid.serviceapprobationwhatsapp.service.DecisionEventBus;
 import org.sid.serviceapprobationwhatsapp.service.OtpMessage;
-import org.sid.serviceapprobationwhatsapp.service.TwilioService;
-import org.sid.serviceapprobationwhatsapp.service.WhatsAppService;
+import org.sid.serviceapprobationwhatsapp.service.OtpVerification;
+import org.sid.serviceapprobationwhatsapp.service.TrustedSessionService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
@@ -35,64 +46,65 @@ public class ApprovalController {
 
     private final ApprovalService approvalService;
     private final OtpMessage otpMessage;
-    private final TwilioService twilioService;
-    private final ApprovalRequestRepository approvalRequestRepository;
-    private final ObjectMapper objectMapper;
-    private final WhatsAppService whatsAppService;
-    private final ApprovalOtpRepository approvalOtpRepository;
-
-    public ApprovalController(ApprovalRequestRepository approvalRequestRepository,
-                              WhatsAppService whatsAppService,
-                              ObjectMapper objectMapper,
-                              TwilioService twilioService,
-                              OtpMessage otpMessage,
+    private final OtpVerification otpVerification;
+    private final ApprovalFanOutService approvalFanOutService;
+    private final AsyncTaskExecutor taskExecutor;
+    private final TrustedSessionService trustedSessionService;
+    private final DecisionEventBus decisionEventBus;
+    private final ApprovalQueryService approvalQueryService;
+    private final ApprovalRegistrationService approvalRegistrationService;
+
+    public ApprovalController(OtpMessage otpMessage,
+                              OtpVerification otpVerification,
                               ApprovalService approvalService,
-                              ApprovalOtpRepository approvalOtpRepository) {
-        this.approvalRequestRepository = approvalRequestRepository;
-        this.objectMapper = objectMapper;
-        this.twilioService = twilioService;
+                              ApprovalFanOutService approvalFanOutService,
+                              @Qualifier("taskExecutor") AsyncTaskExecutor taskExecutor,
+                              TrustedSessionService trustedSessionService,
+                              DecisionEventBus decisionEventBus,
+                              ApprovalQueryService approvalQueryService,
+                              ApprovalRegistrationService approvalRegistrationService) {
         this.otpMessage = otpMessage;
+        this.otpVerification = otpVerification;
         this.approvalService = approvalService;
-        this.whatsAppService = whatsAppService;
-        this.approvalOtpRepository = approvalOtpRepository;
+        this.approvalFanOutService = approvalFanOutService;
+        this.taskExecutor = taskExecutor;
+        this.trustedSessionService = trustedSessionService;
+        this.decisionEventBus = decisionEventBus;
+        this.approvalQueryService = approvalQueryService;
+        this.approvalRegistrationService = approvalRegistrationService;
     }
 
-    @Async
     @PostMapping("/register")
-    public CompletableFuture<ResponseEntity<?>> registerApprovalRequest(@Valid @RequestBody ApprovalRequestDTO approvalRequestDTO) {
+    public CompletableFuture<ResponseEntity<?>> registerApprovalRequest(@Valid @RequestBody ApprovalRequestDTO approvalRequestDTO,
+                                                                       @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
         log.info("Received request to register a new approval: {}", approvalRequestDTO);
 
         return CompletableFuture.supplyAsync(() -> {
             try {
-                String dataJson = objectMapper.writeValueAsString(approvalRequestDTO.getApprovalData());
-                String metadataJson = objectMapper.writeValueAsString(approvalRequestDTO.getMetadata());
-
-                ApprovalRequest approvalRequest = ApprovalRequest.builder()
-                        .objectType(approvalRequestDTO.getObjectType())
-                        .objectId(approvalRequestDTO.getObjectId())
-                        .data(dataJson)
-                        .origin(approvalRequestDTO.getOrigin())
-                        .approvers(approvalRequestDTO.getApprovers())
-                        .demandeur(approvalRequestDTO.getDemandeur())
-                        .commentaire("")
-                        .callbackUrl(approvalRequestDTO.getCallbackUrl())
-                        .metadata(metadataJson)
-                        .decision(statut.Pending)
-                        .requestTimeStamp(LocalDateTime.now())
-                        .build();
-
-                ApprovalRequest savedApprovalRequest = approvalRequestRepository.save(approvalRequest);
-
-                for (String approverPhoneNumber : approvalRequestDTO.getApprovers()) {
-                    otpMessage.sendOtpMessage(approverPhoneNumber);
-                    approvalService.sendOtpAndCreateApprovalOTP(savedApprovalRequest, approverPhoneNumber);
+                RegistrationResult registration = approvalRegistrationService.register(approvalRequestDTO, idempotencyKey);
+                // A retry: the approval and its notifications already exist
+                if (registration.replayed()) {
+                    return ResponseEntity.ok(Map.of("approvalId", registration.approvalId(), "message", "Approval request already registered.", "replayed", true));
                 }
+                ApprovalRequest savedApprovalRequest = registration.approvalRequest();
 
-                return ResponseEntity.status(HttpStatus.CREATED).body(Map.of("approvalId", savedApprovalRequest.getId(), "message", "Approval request registered. Verification codes sent."));
+                // Approvers are contacted concurrently, latency tracks the slowest one
+                List<ApproverNotificationResult> results = approvalFanOutService.notifyApprovers(savedApprovalRequest, approvalRequestDTO.getApprovers());
+                List<String> reached = results.stream().filter(ApproverNotificationResult::reached).map(ApproverNotificationResult::phoneNumber).toList();
+                List<ApproverNotificationResult> failed = results.stream().filter(result -> !result.reached()).toList();
+
+                if (failed.isEmpty()) {
+                    return ResponseEntity.status(HttpStatus.CREATED).body(Map.of("approvalId", savedApprovalRequest.getId(), "message", "Approval request registered. Verification codes sent.", "reached", reached));
+                }
+                log.warn("Approval {} registered but {} of {} approvers could not be reached", savedApprovalRequest.getId(), failed.size(), results.size());
+                return ResponseEntity.status(HttpStatus.MULTI_STATUS).body(Map.of("approvalId", savedApprovalRequest.getId(), "message", "Approval request registered. Some approvers could not be reached.", "reached", reached, "failed", failed));
 
             } catch (JsonProcessingException e) {
                 log.error("Error serializing data or metadata to JSON", e);
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", "Invalid data format."));
+            } catch (IdempotencyKeyConflictException e) {
+                log.warn("Registration refused: {}", e.getMessage());
+                return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(Map.of("error", "Idempotency-Key already used for a different request."));
             } catch (OptimisticLockingFailureException e) {
                 log.error("Optimistic locking failure", e);
                 return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "The approval request was modified by another user. Please try again."));
@@ -100,7 +112,27 @@ public class ApprovalController {
                 log.error("An unexpected error occurred", e);
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", "An unexpected error occurred."));
             }
-        });
+        }, taskExecutor);
+    }
+
+    // Many approvals in one call: per-entry status, approvers notified in the background once the batch is stored
+    @PostMapping("/batch")
+    public CompletableFuture<ResponseEntity<?>> registerBatch(@RequestBody List<ApprovalRequestDTO> approvalRequestDTOs) {
+        log.info("Received batch of {} approval requests", approvalRequestDTOs.size());
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                List<BatchItemResult> results = approvalRegistrationService.registerBatch(approvalRequestDTOs);
+                long created = results.stream().filter(BatchItemResult::created).count();
+                HttpStatus status = created == results.size() ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS;
+                return ResponseEntity.status(status).body(Map.of("created", created, "failed", results.size() - created, "items", results));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", e.getMessage()));
+            } catch (Exception e) {
+                log.error("An unexpected error occurred", e);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", "An unexpected error occurred."));
+            }
+        }, taskExecutor);
     }
 
     @PostMapping("/verify/{approvalId}/{phoneNumber}")
@@ -108,58 +140,71 @@ public class ApprovalController {
                                         @PathVariable String approvalId,
                                         @PathVariable String phoneNumber) {
         try {
-            Optional<ApprovalRequest> approvalRequestOptional = approvalRequestRepository.findById(approvalId);
-            if (approvalRequestOptional.isEmpty()) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Approval not found, Invalid approval ID."));
-            }
-
-            ApprovalRequest approvalRequest = approvalRequestOptional.get();
-
-            if (!approvalRequest.getApprovers().contains(phoneNumber)) {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", "Invalid phone number for this approval request."));
-            }
-
-            Optional<ApprovalOTP> optionalOtpAttempt = approvalOtpRepository.findTopByRecipientNumberAndStatusOrderByCreatedAtDesc(phoneNumber, otpStatut.PENDING);
-
-            if (optionalOtpAttempt.isEmpty()) {
-                return ResponseEntity.status(HttpStatus.GONE).body(Map.of("error", "Invalid action. Access is expired."));
-            }
-
-            ApprovalOTP otpAttempt = optionalOtpAttempt.get();
-
-            if (LocalDateTime.now().isAfter(otpAttempt.getExpiration())) {
-                otpAttempt.setStatus(otpStatut.EXPIRED);
-                approvalOtpRepository.save(otpAttempt);
-                otpMessage.resendOtpMessage(phoneNumber,approvalId);
-                return ResponseEntity.status(HttpStatus.GONE).body(Map.of("error", "OTP has expired"));
-            }
+            return otpVerification.verifyForApproval(approvalId, phoneNumber, request.getCode());
+        } catch (Exception e) {
+            log.error("An unexpected error occurred", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", "An unexpected error occurred."));
+        }
+    }
 
-            boolean isValid = twilioService.checkVerificationCode(phoneNumber, request.getCode(), otpAttempt.getVerificationSid());
-            if (isValid) {
-                otpAttempt.setStatus(otpStatut.APPROVED);
-                approvalOtpRepository.save(otpAttempt);
-                whatsAppService.sendMessageWithInteractiveButtons(approvalRequest);
+    // Newest first, keyset-paginated: pass back nextCursor to get the following page
+    @GetMapping
+    public ResponseEntity<?> listApprovals(@RequestParam(required = false) statut decision,
+                                           @RequestParam(required = false) String origin,
+                                           @RequestParam(required = false) String objectType,
+                                           @RequestParam(required = false) String approver,
+                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                           @RequestParam(required = false) String cursor,
+                                           @RequestParam(defaultValue = "50") int limit) {
+        ApprovalFilter filter = new ApprovalFilter(decision, origin, objectType, approver, from, to);
+        try {
+            return ResponseEntity.ok(approvalQueryService.list(filter, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Invalid cursor."));
+        }
+    }
 
-                return ResponseEntity.ok(Map.of("message", "Verification successful. Approval request sent."));
+    // Same filters, every match in one JSON array streamed as it is read: constant memory whatever the row count
+    @GetMapping(path = "/export", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportApprovals(@RequestParam(required = false) statut decision,
+                                                                 @RequestParam(required = false) String origin,
+                                                                 @RequestParam(required = false) String objectType,
+                                                                 @RequestParam(required = false) String approver,
+                                                                 @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                 @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        ApprovalFilter filter = new ApprovalFilter(decision, origin, objectType, approver, from, to);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> approvalQueryService.export(filter, out));
+    }
 
-            } else {
-                // OTP is invalid, increment invalid attempts
-                otpAttempt.setInvalidattempts(otpAttempt.getInvalidattempts() + 1);
-                approvalOtpRepository.save(otpAttempt); // Save the updated invalid attempt count
+    // Pushed decisions for origin systems instead of polling, optionally narrowed to one origin / object type
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamDecisions(@RequestParam(required = false) String origin,
+                                      @RequestParam(required = false) String objectType) {
+        return decisionEventBus.subscribe(origin, objectType);
+    }
 
-                if (otpAttempt.getInvalidattempts() >= 3) {
-                    otpAttempt.setStatus(otpStatut.DENIED);
-                    approvalOtpRepository.save(otpAttempt);
-                    otpMessage.resendOtpMessage(phoneNumber,approvalId);
-                    return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "You have exceeded the maximum OTP attempts"));
-                }
+    // Long poll: 200 with the decision once there is one, 204 when the wait times out first
+    @GetMapping("/{approvalId}/await")
+    public DeferredResult<ResponseEntity<?>> awaitDecision(@PathVariable String approvalId,
+                                                           @RequestParam(defaultValue = "30") long timeoutSeconds) {
+        if (!UuidV7.isUuid(approvalId)) {
+            DeferredResult<ResponseEntity<?>> notFound = new DeferredResult<>();
+            notFound.setResult(ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Approval not found, Invalid approval ID.")));
+            return notFound;
+        }
+        return decisionEventBus.await(approvalId, timeoutSeconds);
+    }
 
-                return ResponseEntity.badRequest().body(Map.of("error", "Invalid OTP"));
-            }
-        } catch (Exception e) {
-            log.error("An unexpected error occurred", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", "An unexpected error occurred."));
+    // Ends an approver's trusted window, their next approval asks for an OTP again
+    @DeleteMapping("/trusted-sessions/{phoneNumber}")
+    public ResponseEntity<?> revokeTrustedSession(@PathVariable String phoneNumber) {
+        if (trustedSessionService.revoke(phoneNumber)) {
+            return ResponseEntity.noContent().build();
         }
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "No trusted session for this phone number."));
     }
 
     @PostMapping("/resendotp/{phoneNumber}/{messageId}")
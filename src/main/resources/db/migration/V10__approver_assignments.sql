@@ -0,0 +1,28 @@
+-- Approvers: the element collection becomes one assignment row per distinct approver.
+-- The collection kept no order, positions follow the phone numbers. Numbers longer than 32 characters make this fail
+create table approver_assignments (
+    id           bigint       not null auto_increment,
+    request_id   varchar(255) not null,
+    phone_number varchar(32)  not null,
+    position     integer      not null,
+    state        enum ('ASSIGNED','NOTIFIED','VERIFIED','DECIDED') not null,
+    decision     enum ('Approuver','Rejeter','En_Attente','Pending'),
+    notified_at  datetime(6),
+    verified_at  datetime(6),
+    decided_at   datetime(6),
+    primary key (id),
+    constraint uk_assignment_request_phone unique (request_id, phone_number),
+    constraint fk_assignment_request foreign key (request_id) references approval_requests (id)
+) engine = InnoDB;
+
+create index idx_assignment_phone_state on approver_assignments (phone_number, state, request_id);
+
+-- Every approver was contacted at registration
+insert into approver_assignments (request_id, phone_number, position, state)
+select a.approval_request_id,
+       a.approvers,
+       row_number() over (partition by a.approval_request_id order by a.approvers) - 1,
+       'NOTIFIED'
+from (select distinct approval_request_id, approvers from approval_request_approvers where approvers is not null) a;
+
+drop table approval_request_approvers;
@@ -0,0 +1,103 @@
+-- Approval ids move from UUID strings to BINARY(16): UUIDv7 for new rows, existing UUIDs keep their value.
+-- The tables referencing them are rebuilt rather than altered: V1 databases created by Hibernate carry
+-- generated foreign key names that cannot be dropped by name here.
+-- IDENTITY ids move to pooled sequences (allocationSize 50), so inserts can be JDBC-batched. Needs MariaDB 10.3+
+create sequence approval_otp_seq start with 1 increment by 50;
+create sequence approver_assignment_seq start with 1 increment by 50;
+create sequence outbox_message_seq start with 1 increment by 50;
+
+create table approval_requests_v2 (
+    id                 binary(16)   not null,
+    demande_type       varchar(255) not null,
+    demande_id         varchar(255) not null,
+    data               Text,
+    origin             varchar(255),
+    demandeur          varchar(255) not null,
+    commentaire        varchar(255),
+    callback_url       varchar(255),
+    metadata           Text,
+    decision           enum ('Approuver','Rejeter','En_Attente','Pending'),
+    request_time_stamp datetime(6),
+    version            integer,
+    primary key (id)
+) engine = InnoDB;
+
+insert into approval_requests_v2 (id, demande_type, demande_id, data, origin, demandeur, commentaire, callback_url,
+                                  metadata, decision, request_time_stamp, version)
+select unhex(replace(r.id, '-', '')), r.demande_type, r.demande_id, r.data, r.origin, r.demandeur, r.commentaire,
+       r.callback_url, r.metadata, r.decision, r.request_time_stamp, coalesce(r.version, 0)
+from approval_requests r;
+
+create table approval_otp_v2 (
+    otp_id           bigint       not null,
+    phone_number     varchar(255) not null,
+    verification_sid varchar(255) not null,
+    code_hash        varchar(64),
+    code_salt        varchar(32),
+    status           tinyint      not null check (status between 0 and 3),
+    created_at       datetime(6)  not null,
+    expiration       datetime(6),
+    invalid_attempts integer      not null,
+    request_id       binary(16),
+    primary key (otp_id),
+    constraint uk_otp_verification_request unique (verification_sid, request_id),
+    constraint fk_otp_request_id foreign key (request_id) references approval_requests_v2 (id)
+) engine = InnoDB;
+
+create index idx_otp_phone_status on approval_otp_v2 (phone_number, status, created_at);
+
+insert into approval_otp_v2 (otp_id, phone_number, verification_sid, code_hash, code_salt, status, created_at,
+                             expiration, invalid_attempts, request_id)
+select o.otp_id, o.phone_number, o.verification_sid, o.code_hash, o.code_salt, o.status, o.created_at,
+       o.expiration, o.invalid_attempts, unhex(replace(o.request_id, '-', ''))
+from approval_otp o;
+
+create table approver_assignments_v2 (
+    id           bigint      not null,
+    request_id   binary(16)  not null,
+    phone_number varchar(32) not null,
+    position     integer     not null,
+    state        enum ('ASSIGNED','NOTIFIED','VERIFIED','DECIDED') not null,
+    decision     enum ('Approuver','Rejeter','En_Attente','Pending'),
+    notified_at  datetime(6),
+    verified_at  datetime(6),
+    decided_at   datetime(6),
+    primary key (id),
+    constraint uk_assignment_request_phone unique (request_id, phone_number),
+    constraint fk_assignment_request_id foreign key (request_id) references approval_requests_v2 (id)
+) engine = InnoDB;
+
+create index idx_assignment_phone_state on approver_assignments_v2 (phone_number, state, request_id);
+
+insert into approver_assignments_v2 (id, request_id, phone_number, position, state, decision, notified_at, verified_at, decided_at)
+select a.id, unhex(replace(a.request_id, '-', '')), a.phone_number, a.position, a.state, a.decision,
+       a.notified_at, a.verified_at, a.decided_at
+from approver_assignments a;
+
+drop table approval_otp;
+drop table approver_assignments;
+drop table approval_requests;
+rename table approval_requests_v2 to approval_requests,
+             approval_otp_v2 to approval_otp,
+             approver_assignments_v2 to approver_assignments;
+
+alter table outbox_messages modify id bigint not null;
+
+-- Sequences continue past the existing ids (the pooled optimizer uses the 49 values below what it reads)
+set @restart = (select coalesce(max(otp_id), 0) + 100 from approval_otp);
+set @statement = concat('alter sequence approval_otp_seq restart with ', @restart);
+prepare restart_sequence from @statement;
+execute restart_sequence;
+deallocate prepare restart_sequence;
+
+set @restart = (select coalesce(max(id), 0) + 100 from approver_assignments);
+set @statement = concat('alter sequence approver_assignment_seq restart with ', @restart);
+prepare restart_sequence from @statement;
+execute restart_sequence;
+deallocate prepare restart_sequence;
+
+set @restart = (select coalesce(max(id), 0) + 100 from outbox_messages);
+set @statement = concat('alter sequence outbox_message_seq restart with ', @restart);
+prepare restart_sequence from @statement;
+execute restart_sequence;
+deallocate prepare restart_sequence;
@@ -0,0 +1,22 @@
+-- data and metadata become codec-tagged bytes: one header byte (0 = raw UTF-8, 1 = deflate), then the body.
+-- Existing values are the raw UTF-8 text, they get the raw header
+alter table approval_requests
+    modify data BLOB,
+    modify metadata BLOB;
+
+update approval_requests
+set data     = case when data is null then null else concat(x'00', data) end,
+    metadata = case when metadata is null then null else concat(x'00', metadata) end;
+
+-- Payloads above payload.inline-max-bytes are spilled out of the approval_requests row
+create sequence approval_payload_seq start with 1 increment by 50;
+
+create table approval_payloads (
+    id         bigint     not null,
+    request_id binary(16) not null,
+    kind       enum ('DATA','METADATA') not null,
+    content    LONGBLOB   not null,
+    primary key (id),
+    constraint uk_payload_request_kind unique (request_id, kind),
+    constraint fk_payload_request foreign key (request_id) references approval_requests (id)
+) engine = InnoDB;
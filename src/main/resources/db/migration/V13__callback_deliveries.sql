@@ -0,0 +1,21 @@
+-- Decisions to report to the origin system's callbackUrl, claimed in batches by the callback workers
+create sequence callback_delivery_seq start with 1 increment by 50;
+
+create table callback_deliveries (
+    id              bigint        not null,
+    approval_id     varchar(255)  not null,
+    callback_url    varchar(2048) not null,
+    host            varchar(255)  not null,
+    payload         Text          not null,
+    status          enum ('PENDING','SENDING','DELIVERED','DEAD') not null,
+    attempts        integer       not null,
+    claim_token     varchar(36),
+    last_error      varchar(1000),
+    created_at      datetime(6)   not null,
+    next_attempt_at datetime(6)   not null,
+    delivered_at    datetime(6),
+    primary key (id)
+) engine = InnoDB;
+
+create index idx_callback_status_next_attempt on callback_deliveries (status, next_attempt_at);
+create index idx_callback_claim_token on callback_deliveries (claim_token);
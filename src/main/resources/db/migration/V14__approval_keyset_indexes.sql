@@ -0,0 +1,10 @@
+-- Keyset pagination indexes. The key columns are shortened so the widest index stays within InnoDB's
+-- 3072-byte key limit in utf8mb4; values longer than the new lengths make this fail rather than being truncated
+alter table approval_requests
+    modify demande_type varchar(64)  not null,
+    modify demande_id   varchar(128) not null,
+    modify origin       varchar(64);
+
+create index idx_approval_time_id on approval_requests (request_time_stamp, id);
+create index idx_approval_decision_time_id on approval_requests (decision, request_time_stamp, id);
+create index idx_approval_origin_type_time_id on approval_requests (origin, demande_type, request_time_stamp, id);
@@ -0,0 +1,25 @@
+-- One active (undecided) request per origin object: active is 1 while undecided and null once decided,
+-- so the unique index ignores decided requests. Only the newest undecided duplicate stays active
+alter table approval_requests
+    add column active bit after decision,
+    add constraint uq_approval_active_object unique (origin, demande_type, demande_id, active);
+
+update approval_requests r
+    join (select id,
+                 row_number() over (partition by origin, demande_type, demande_id
+                                    order by request_time_stamp desc, id desc) as position
+          from approval_requests
+          where decision is null or decision not in ('Approuver', 'Rejeter')) ranked on ranked.id = r.id
+set r.active = 1
+where ranked.position = 1;
+
+-- Idempotency-Key -> the approval created under it, kept for approval.idempotency.retention-minutes
+create table registration_idempotency_keys (
+    idempotency_key varchar(128) not null,
+    approval_id     varchar(36)  not null,
+    request_hash    varchar(64)  not null,
+    created_at      datetime(6)  not null,
+    primary key (idempotency_key)
+) engine = InnoDB;
+
+create index idx_registration_key_created_at on registration_idempotency_keys (created_at);
@@ -0,0 +1,4 @@
+-- Outbox entries are claimed in batches under a token, send outcomes are only written by the claim holder
+alter table outbox_messages add column claim_token varchar(36) after attempts;
+
+create index idx_outbox_claim_token on outbox_messages (claim_token);
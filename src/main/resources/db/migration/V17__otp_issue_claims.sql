@@ -0,0 +1,7 @@
+-- One OTP issuer per phone across nodes: the row is taken before the provider call and deleted once the OTP is recorded
+create table otp_issue_claims (
+    phone_number  varchar(32) not null,
+    claim_token   varchar(36) not null,
+    claimed_until datetime(6) not null,
+    primary key (phone_number)
+) engine = InnoDB;
@@ -0,0 +1,46 @@
+-- Schema of the service before the approval pipeline rework, as ddl-auto=create used to generate it.
+-- Existing databases are baselined at this version (spring.flyway.baseline-on-migrate), fresh ones start here.
+
+create table approval_requests (
+    id                 varchar(255) not null,
+    demande_type       varchar(255) not null,
+    demande_id         varchar(255) not null,
+    data               Text,
+    origin             varchar(255),
+    demandeur          varchar(255) not null,
+    commentaire        varchar(255),
+    callback_url       varchar(255),
+    metadata           Text,
+    decision           enum ('Approuver','Rejeter','En_Attente','Pending'),
+    request_time_stamp datetime(6),
+    version            integer,
+    primary key (id)
+) engine = InnoDB;
+
+create table approval_request_approvers (
+    approval_request_id varchar(255) not null,
+    approvers           varchar(255),
+    constraint fk_approvers_request foreign key (approval_request_id) references approval_requests (id)
+) engine = InnoDB;
+
+create table approval_otp (
+    otp_id           bigint       not null auto_increment,
+    phone_number     varchar(255) not null,
+    verification_sid varchar(255) not null,
+    status           tinyint      not null check (status between 0 and 3),
+    created_at       datetime(6)  not null,
+    expiration       datetime(6),
+    invalid_attempts integer      not null,
+    processing       bit          not null,
+    request_id       varchar(255),
+    primary key (otp_id),
+    constraint fk_otp_request foreign key (request_id) references approval_requests (id)
+) engine = InnoDB;
+
+create table otp_resend_mapping (
+    mapping_id       varchar(255) not null,
+    approval_id      varchar(255),
+    recipient_number varchar(255),
+    expiration       datetime(6),
+    primary key (mapping_id)
+) engine = InnoDB;
@@ -0,0 +1,19 @@
+-- Transactional outbox: WhatsApp sends are queued with the state change that triggers them
+-- and delivered by the dispatcher workers
+create table outbox_messages (
+    id               bigint        not null auto_increment,
+    type             enum ('OTP','OTP_RESEND','TRY_AGAIN','APPROVAL','COMMENT') not null,
+    recipient_number varchar(255)  not null,
+    approval_id      varchar(255),
+    payload          Text          not null,
+    status           enum ('PENDING','SENDING','SENT','FAILED') not null,
+    attempts         integer       not null,
+    message_id       varchar(255),
+    last_error       varchar(1000),
+    created_at       datetime(6)   not null,
+    next_attempt_at  datetime(6)   not null,
+    sent_at          datetime(6),
+    primary key (id)
+) engine = InnoDB;
+
+create index idx_outbox_status_next_attempt on outbox_messages (status, next_attempt_at);
@@ -0,0 +1,8 @@
+-- Durable tier of the webhook redelivery check, keyed on the WhatsApp message id
+create table processed_webhook_messages (
+    message_id   varchar(128) not null,
+    processed_at datetime(6)  not null,
+    primary key (message_id)
+) engine = InnoDB;
+
+create index idx_processed_webhook_processed_at on processed_webhook_messages (processed_at);
@@ -0,0 +1,11 @@
+-- messageId -> approvalId of the approval and comment messages we sent, expired rows are purged
+create table message_id_mappings (
+    message_id  varchar(128) not null,
+    approval_id varchar(255) not null,
+    created_at  datetime(6)  not null,
+    expires_at  datetime(6)  not null,
+    primary key (message_id)
+) engine = InnoDB;
+
+create index idx_message_mapping_approval on message_id_mappings (approval_id);
+create index idx_message_mapping_expires_at on message_id_mappings (expires_at);
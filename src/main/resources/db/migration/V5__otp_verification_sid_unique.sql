@@ -0,0 +1,2 @@
+-- OTP finalization runs after the provider call and is keyed on the verification SID, a replay must not add a row
+alter table approval_otp add constraint uk_otp_verification_sid unique (verification_sid);
@@ -0,0 +1,4 @@
+-- Local OTP provider: salted hash of the code, Twilio-issued rows leave both empty
+alter table approval_otp
+    add column code_hash varchar(64) after verification_sid,
+    add column code_salt varchar(32) after code_hash;
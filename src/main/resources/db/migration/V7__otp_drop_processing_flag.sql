@@ -0,0 +1,2 @@
+-- OTP transitions are single conditional updates now, the processing flag is no longer used
+alter table approval_otp drop column processing;
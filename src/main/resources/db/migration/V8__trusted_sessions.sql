@@ -0,0 +1,10 @@
+-- Approvers who verified recently get approval messages without a new OTP until the session expires
+create table trusted_sessions (
+    phone_number     varchar(32)  not null,
+    verification_sid varchar(255) not null,
+    created_at       datetime(6)  not null,
+    expires_at       datetime(6)  not null,
+    primary key (phone_number)
+) engine = InnoDB;
+
+create index idx_trusted_session_expires_at on trusted_sessions (expires_at);
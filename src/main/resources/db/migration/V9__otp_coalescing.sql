@@ -0,0 +1,6 @@
+-- Coalesced OTPs: approvals of one approver share a verification, one row per approval
+alter table approval_otp
+    drop index uk_otp_verification_sid,
+    add constraint uk_otp_verification_request unique (verification_sid, request_id);
+
+create index idx_otp_phone_status on approval_otp (phone_number, status, created_at);
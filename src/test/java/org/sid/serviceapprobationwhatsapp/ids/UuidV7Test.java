@@ -0,0 +1,87 @@
+package org.sid.serviceapprobationwhatsapp.ids;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UuidV7Test {
+
+    @Test
+    void carriesVersionVariantAndTimestamp() {
+        long before = System.currentTimeMillis();
+        UUID uuid = UuidV7.generate();
+        long after = System.currentTimeMillis();
+
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+        long timestamp = uuid.getMostSignificantBits() >>> 16;
+        // More than 4096 ids in a millisecond carry into the timestamp, which can then run ahead of the clock
+        assertTrue(timestamp >= before && timestamp <= after + 1_000, "timestamp " + timestamp);
+    }
+
+    @Test
+    void successiveIdsAreStrictlyIncreasing() {
+        String previous = UuidV7.generateString();
+        for (int i = 0; i < 100_000; i++) {
+            String next = UuidV7.generateString();
+            // Lowercase hex with fixed dashes: string order is the unsigned 128-bit order
+            assertTrue(next.compareTo(previous) > 0, previous + " then " + next);
+            previous = next;
+        }
+    }
+
+    @Test
+    void concurrentIdsAreUnique() {
+        ConcurrentLinkedQueue<String> ids = new ConcurrentLinkedQueue<>();
+        IntStream.range(0, 8).parallel().forEach(worker -> {
+            for (int i = 0; i < 10_000; i++) {
+                ids.add(UuidV7.generateString());
+            }
+        });
+
+        Set<String> unique = new HashSet<>(ids);
+        assertEquals(ids.size(), unique.size());
+    }
+
+    @Test
+    void bytesRoundTrip() {
+        String id = UuidV7.generateString();
+        String legacy = UUID.randomUUID().toString();
+
+        assertEquals(id, UuidV7.fromBytes(UuidV7.toBytes(id)));
+        assertEquals(legacy, UuidV7.fromBytes(UuidV7.toBytes(legacy)));
+        assertArrayEquals(new byte[]{0x01, 0x23, 0x45, 0x67, (byte) 0x89, (byte) 0xab, (byte) 0xcd, (byte) 0xef,
+                        0x01, 0x23, 0x45, 0x67, (byte) 0x89, (byte) 0xab, (byte) 0xcd, (byte) 0xef},
+                UuidV7.toBytes("01234567-89ab-cdef-0123-456789abcdef"));
+    }
+
+    @Test
+    void byteOrderFollowsCreationOrder() {
+        // BINARY(16) columns compare bytes unsigned, later ids must land at the end of the index
+        List<byte[]> ids = IntStream.range(0, 1_000).mapToObj(i -> UuidV7.toBytes(UuidV7.generateString())).toList();
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue(Arrays.compareUnsigned(ids.get(i - 1), ids.get(i)) < 0);
+        }
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        assertThrows(IllegalArgumentException.class, () -> UuidV7.fromBytes(new byte[15]));
+        assertThrows(IllegalArgumentException.class, () -> UuidV7.toBytes("not-a-uuid"));
+        assertTrue(UuidV7.isUuid(UUID.randomUUID().toString()));
+        assertFalse(UuidV7.isUuid("not-a-uuid"));
+        assertFalse(UuidV7.isUuid(null));
+    }
+}
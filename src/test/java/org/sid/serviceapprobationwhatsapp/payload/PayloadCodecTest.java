@@ -0,0 +1,86 @@
+package org.sid.serviceapprobationwhatsapp.payload;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PayloadCodecTest {
+
+    private static final byte RAW = 0;
+    private static final byte DEFLATE = 1;
+
+    private final PayloadCodec deflate = new PayloadCodec("deflate", 512, 6);
+    private final PayloadCodec raw = new PayloadCodec("raw", 512, 6);
+
+    @Test
+    void rawCodecStoresUtf8BehindItsHeader() {
+        String payload = "{\"montant\":\"1 250,00 €\",\"motif\":\"Déplacement\"}".repeat(40);
+
+        byte[] stored = raw.encode(payload);
+
+        assertEquals(RAW, stored[0]);
+        assertEquals(payload, new String(stored, 1, stored.length - 1, StandardCharsets.UTF_8));
+        assertEquals(payload, raw.decode(stored));
+    }
+
+    @Test
+    void deflatesLargePayloadsAndRestoresThem() {
+        String payload = "{\"ligne\":\"Fournitures de bureau\",\"quantite\":12,\"prix\":\"4,50 €\"}".repeat(100);
+
+        byte[] stored = deflate.encode(payload);
+
+        assertEquals(DEFLATE, stored[0]);
+        assertTrue(stored.length < payload.getBytes(StandardCharsets.UTF_8).length / 4);
+        assertEquals(payload, deflate.decode(stored));
+    }
+
+    @Test
+    void keepsSmallPayloadsRaw() {
+        String payload = "{\"id\":42}";
+
+        byte[] stored = deflate.encode(payload);
+
+        assertEquals(RAW, stored[0]);
+        assertEquals(payload, deflate.decode(stored));
+    }
+
+    @Test
+    void decodingFollowsTheHeaderWhateverTheConfiguredCodec() {
+        String payload = "x".repeat(4096);
+
+        assertEquals(payload, raw.decode(deflate.encode(payload)));
+        assertEquals(payload, deflate.decode(raw.encode(payload)));
+    }
+
+    @Test
+    void emptyStoredValueDecodesToEmptyString() {
+        assertEquals("", deflate.decode(new byte[0]));
+        assertEquals("", deflate.decode(deflate.encode("")));
+    }
+
+    @Test
+    void truncatedDeflatePayloadIsRejected() {
+        byte[] stored = deflate.encode("{\"commentaire\":\"valide\"}".repeat(200));
+        byte[] truncated = Arrays.copyOf(stored, stored.length / 2);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> deflate.decode(truncated));
+        assertEquals("Truncated deflate payload", e.getMessage());
+    }
+
+    @Test
+    void corruptDeflatePayloadIsRejected() {
+        byte[] stored = {DEFLATE, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff};
+
+        assertThrows(IllegalStateException.class, () -> deflate.decode(stored));
+    }
+
+    @Test
+    void unknownHeaderIsRejected() {
+        assertThrows(IllegalStateException.class, () -> deflate.decode(new byte[]{7, 'a', 'b'}));
+    }
+}
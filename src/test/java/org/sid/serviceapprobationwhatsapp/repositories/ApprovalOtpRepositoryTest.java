@@ -0,0 +1,134 @@
+package org.sid.serviceapprobationwhatsapp.repositories;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sid.serviceapprobationwhatsapp.entities.ApprovalOTP;
+import org.sid.serviceapprobationwhatsapp.entities.ApprovalRequest;
+import org.sid.serviceapprobationwhatsapp.enums.otpStatut;
+import org.sid.serviceapprobationwhatsapp.enums.statut;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(MariaDbTestConfiguration.class)
+@Testcontainers(disabledWithoutDocker = true)
+// No test-managed transaction: each wrong code commits on its own, from its own thread
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ApprovalOtpRepositoryTest {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Autowired
+    private ApprovalOtpRepository approvalOtpRepository;
+
+    @Autowired
+    private ApprovalRequestRepository approvalRequestRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    void staysPendingUntilTheLastAllowedAttempt() {
+        Long otpId = pendingOtp();
+
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            assertEquals(attempt, recordFailedAttempt(otpId));
+            otpStatut expected = attempt < MAX_ATTEMPTS ? otpStatut.PENDING : otpStatut.DENIED;
+            assertEquals(expected, approvalOtpRepository.findById(otpId).orElseThrow().getStatus());
+        }
+        // Denied: later codes are not counted any more
+        int late = transactionTemplate.execute(status ->
+                approvalOtpRepository.recordFailedAttempt(otpId, otpStatut.PENDING, otpStatut.DENIED, MAX_ATTEMPTS));
+        assertEquals(0, late);
+    }
+
+    @Test
+    void concurrentWrongCodesAreEachCountedOnce() throws Exception {
+        Long otpId = pendingOtp();
+        int submissions = 8;
+        ExecutorService submitters = Executors.newFixedThreadPool(submissions);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> updates = new ArrayList<>();
+        try {
+            for (int i = 0; i < submissions; i++) {
+                updates.add(submitters.submit(() -> {
+                    start.await();
+                    return transactionTemplate.execute(status ->
+                            approvalOtpRepository.recordFailedAttempt(otpId, otpStatut.PENDING, otpStatut.DENIED, MAX_ATTEMPTS));
+                }));
+            }
+            start.countDown();
+
+            int counted = 0;
+            for (Future<Integer> update : updates) {
+                counted += update.get(10, TimeUnit.SECONDS);
+            }
+            // No lost increment and no retry: exactly the attempts made while pending count, the last one denies
+            assertEquals(MAX_ATTEMPTS, counted);
+        } finally {
+            submitters.shutdownNow();
+        }
+
+        ApprovalOTP otp = approvalOtpRepository.findById(otpId).orElseThrow();
+        assertEquals(MAX_ATTEMPTS, otp.getInvalidattempts());
+        assertEquals(otpStatut.DENIED, otp.getStatus());
+    }
+
+    private int recordFailedAttempt(Long otpId) {
+        Integer attempts = transactionTemplate.execute(status -> {
+            assertEquals(1, approvalOtpRepository.recordFailedAttempt(otpId, otpStatut.PENDING, otpStatut.DENIED, MAX_ATTEMPTS));
+            return approvalOtpRepository.findInvalidAttempts(otpId);
+        });
+        return attempts == null ? -1 : attempts;
+    }
+
+    private Long pendingOtp() {
+        return transactionTemplate.execute(status -> {
+            ApprovalRequest request = approvalRequestRepository.save(ApprovalRequest.builder()
+                    .objectType("FACTURE")
+                    .objectId(UUID.randomUUID().toString())
+                    .origin("ERP")
+                    .demandeur("comptabilite")
+                    .decision(statut.Pending)
+                    .active(Boolean.TRUE)
+                    .requestTimeStamp(LocalDateTime.now())
+                    .build());
+            return approvalOtpRepository.save(ApprovalOTP.builder()
+                    .approvalRequest(request)
+                    .recipientNumber("+33612345678")
+                    .verificationSid("VE" + UUID.randomUUID().toString().replace("-", ""))
+                    .status(otpStatut.PENDING)
+                    .createdAt(LocalDateTime.now())
+                    .expiration(LocalDateTime.now().plusMinutes(5))
+                    .invalidattempts(0)
+                    .build()).getOtpId();
+        });
+    }
+}
@@ -0,0 +1,159 @@
+package org.sid.serviceapprobationwhatsapp.repositories;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sid.serviceapprobationwhatsapp.entities.CallbackDelivery;
+import org.sid.serviceapprobationwhatsapp.enums.callbackStatut;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.IntSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(MariaDbTestConfiguration.class)
+@Testcontainers(disabledWithoutDocker = true)
+// No test-managed transaction: every claim and write-back commits on its own, as the workers do
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CallbackDeliveryRepositoryTest {
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final List<callbackStatut> CLAIMABLE = List.of(callbackStatut.PENDING, callbackStatut.SENDING);
+
+    @Autowired
+    private CallbackDeliveryRepository callbackDeliveryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    void claimTakesOnlyDueRowsAndOnlyOnce() {
+        LocalDateTime now = LocalDateTime.now();
+        Long due = delivery(0, now.minusMinutes(1));
+        Long alsoDue = delivery(0, now.minusMinutes(1));
+        Long notYet = delivery(0, now.plusHours(1));
+        List<Long> ids = List.of(due, alsoDue, notYet);
+
+        String token = UUID.randomUUID().toString();
+        assertEquals(2, claim(ids, token, now, now.plusMinutes(1)));
+        assertEquals(List.of(due, alsoDue), claimedIds(token));
+
+        // A second worker racing on the same ids gets nothing
+        String other = UUID.randomUUID().toString();
+        assertEquals(0, claim(ids, other, now, now.plusMinutes(1)));
+        assertEquals(List.of(), claimedIds(other));
+    }
+
+    @Test
+    void anExpiredLeaseIsReclaimedAndTheFormerClaimCanNoLongerWrite() {
+        LocalDateTime now = LocalDateTime.now();
+        Long id = delivery(0, now.minusMinutes(1));
+
+        // The first worker died mid-send: its lease is already over when the next poll comes
+        String stale = UUID.randomUUID().toString();
+        assertEquals(1, claim(List.of(id), stale, now, now.minusSeconds(1)));
+        String current = UUID.randomUUID().toString();
+        assertEquals(1, claim(List.of(id), current, now, now.plusMinutes(1)));
+
+        assertEquals(0, write(() -> callbackDeliveryRepository.markDelivered(stale, callbackStatut.SENDING, callbackStatut.DELIVERED, now)));
+        assertEquals(0, write(() -> callbackDeliveryRepository.markDead(stale, callbackStatut.SENDING, callbackStatut.DEAD, true, MAX_ATTEMPTS, "late")));
+        assertEquals(0, write(() -> callbackDeliveryRepository.reschedule(stale, callbackStatut.SENDING, callbackStatut.PENDING, now, "late")));
+
+        assertEquals(1, write(() -> callbackDeliveryRepository.markDelivered(current, callbackStatut.SENDING, callbackStatut.DELIVERED, now)));
+        CallbackDelivery delivered = callbackDeliveryRepository.findById(id).orElseThrow();
+        assertEquals(callbackStatut.DELIVERED, delivered.getStatus());
+        assertEquals(current, delivered.getClaimToken());
+    }
+
+    @Test
+    void aTransientFailureOnlyKillsTheRowsOutOfAttempts() {
+        LocalDateTime now = LocalDateTime.now();
+        Long fresh = delivery(0, now.minusMinutes(1));
+        Long lastTry = delivery(MAX_ATTEMPTS - 1, now.minusMinutes(1));
+        String token = UUID.randomUUID().toString();
+        assertEquals(2, claim(List.of(fresh, lastTry), token, now, now.plusMinutes(1)));
+
+        // The order the callback service applies them in: DEAD first, the rest goes back to PENDING
+        LocalDateTime retryAt = now.plusMinutes(5);
+        assertEquals(1, write(() -> callbackDeliveryRepository.markDead(token, callbackStatut.SENDING, callbackStatut.DEAD, false, MAX_ATTEMPTS, "503")));
+        assertEquals(1, write(() -> callbackDeliveryRepository.reschedule(token, callbackStatut.SENDING, callbackStatut.PENDING, retryAt, "503")));
+
+        CallbackDelivery dead = callbackDeliveryRepository.findById(lastTry).orElseThrow();
+        assertEquals(callbackStatut.DEAD, dead.getStatus());
+        assertEquals(MAX_ATTEMPTS, dead.getAttempts());
+        assertEquals("503", dead.getLastError());
+
+        CallbackDelivery retried = callbackDeliveryRepository.findById(fresh).orElseThrow();
+        assertEquals(callbackStatut.PENDING, retried.getStatus());
+        assertEquals(1, retried.getAttempts());
+        assertEquals("503", retried.getLastError());
+        assertEquals(0, claim(List.of(fresh), UUID.randomUUID().toString(), now, now.plusMinutes(1)));
+    }
+
+    @Test
+    void aPermanentFailureKillsTheWholeClaim() {
+        LocalDateTime now = LocalDateTime.now();
+        Long first = delivery(0, now.minusMinutes(1));
+        Long second = delivery(1, now.minusMinutes(1));
+        String token = UUID.randomUUID().toString();
+        assertEquals(2, claim(List.of(first, second), token, now, now.plusMinutes(1)));
+
+        assertEquals(2, write(() -> callbackDeliveryRepository.markDead(token, callbackStatut.SENDING, callbackStatut.DEAD, true, MAX_ATTEMPTS, "410")));
+        assertEquals(0, write(() -> callbackDeliveryRepository.reschedule(token, callbackStatut.SENDING, callbackStatut.PENDING, now, "410")));
+
+        for (Long id : List.of(first, second)) {
+            CallbackDelivery dead = callbackDeliveryRepository.findById(id).orElseThrow();
+            assertEquals(callbackStatut.DEAD, dead.getStatus());
+            assertNull(dead.getDeliveredAt());
+        }
+    }
+
+    private int claim(List<Long> ids, String token, LocalDateTime now, LocalDateTime leaseUntil) {
+        return write(() -> callbackDeliveryRepository.claim(ids, CLAIMABLE, callbackStatut.SENDING, token, now, leaseUntil));
+    }
+
+    private List<Long> claimedIds(String token) {
+        return callbackDeliveryRepository.findByClaimTokenAndStatus(token, callbackStatut.SENDING).stream()
+                .map(CallbackDelivery::getId)
+                .sorted()
+                .toList();
+    }
+
+    private int write(IntSupplier update) {
+        Integer updated = transactionTemplate.execute(status -> update.getAsInt());
+        return updated == null ? -1 : updated;
+    }
+
+    private Long delivery(int attempts, LocalDateTime nextAttemptAt) {
+        return callbackDeliveryRepository.save(CallbackDelivery.builder()
+                .approvalId(UUID.randomUUID().toString())
+                .callbackUrl("https://erp.example.com/approvals/callback")
+                .host("erp.example.com")
+                .payload("{\"decision\":\"Approuver\"}")
+                .status(callbackStatut.PENDING)
+                .attempts(attempts)
+                .createdAt(LocalDateTime.now())
+                .nextAttemptAt(nextAttemptAt)
+                .build()).getId();
+    }
+}
@@ -0,0 +1,23 @@
+package org.sid.serviceapprobationwhatsapp.repositories;
+
+import org.sid.serviceapprobationwhatsapp.payload.PayloadCodec;
+import org.sid.serviceapprobationwhatsapp.payload.PayloadConverter;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.testcontainers.containers.MariaDBContainer;
+import org.testcontainers.utility.DockerImageName;
+
+// Flyway migrates the container like a production database and Hibernate validates the mapping against it.
+// The container lives as long as the cached context, so the repository tests share one
+@TestConfiguration(proxyBeanMethods = false)
+@Import({PayloadCodec.class, PayloadConverter.class})
+public class MariaDbTestConfiguration {
+
+    @Bean
+    @ServiceConnection
+    MariaDBContainer<?> mariaDbContainer() {
+        return new MariaDBContainer<>(DockerImageName.parse("mariadb:10.11"));
+    }
+}
@@ -0,0 +1,243 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sid.serviceapprobationwhatsapp.dto.ApprovalRequestDTO;
+import org.sid.serviceapprobationwhatsapp.dto.ApproverNotificationResult;
+import org.sid.serviceapprobationwhatsapp.dto.BatchItemResult;
+import org.sid.serviceapprobationwhatsapp.dto.RegistrationResult;
+import org.sid.serviceapprobationwhatsapp.entities.ApprovalRequest;
+import org.sid.serviceapprobationwhatsapp.exception.IdempotencyKeyConflictException;
+import org.sid.serviceapprobationwhatsapp.repositories.ApprovalRequestRepository;
+import org.sid.serviceapprobationwhatsapp.repositories.MariaDbTestConfiguration;
+import org.sid.serviceapprobationwhatsapp.service.ApprovalFanOutService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Small chunks, so a few entries are enough to exercise the chunk fallback
+@DataJpaTest(properties = "approval.batch.chunk-size=3")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({MariaDbTestConfiguration.class, ApprovalRegistrationServiceImplTest.Registration.class})
+@Testcontainers(disabledWithoutDocker = true)
+// No test-managed transaction: registration runs its own, and concurrent retries must see each other's commits
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ApprovalRegistrationServiceImplTest {
+
+    // The registration service on the real schema, approvers are only recorded
+    @TestConfiguration(proxyBeanMethods = false)
+    @Import({ApprovalRegistrationServiceImpl.class, PayloadStoreImpl.class})
+    static class Registration {
+
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+
+        @Bean
+        Validator validator() {
+            return Validation.buildDefaultValidatorFactory().getValidator();
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        RecordingFanOut approvalFanOutService() {
+            return new RecordingFanOut();
+        }
+    }
+
+    static class RecordingFanOut implements ApprovalFanOutService {
+
+        final List<Map<String, List<ApprovalRequest>>> batches = new CopyOnWriteArrayList<>();
+
+        @Override
+        public List<ApproverNotificationResult> notifyApprovers(ApprovalRequest approvalRequest, List<String> approvers) {
+            return approvers.stream().map(ApproverNotificationResult::reached).toList();
+        }
+
+        @Override
+        public CompletableFuture<List<ApproverNotificationResult>> notifyBatch(Map<String, List<ApprovalRequest>> approvalsByApprover) {
+            batches.add(approvalsByApprover);
+            return CompletableFuture.completedFuture(List.of());
+        }
+    }
+
+    @Autowired
+    private ApprovalRegistrationServiceImpl registrationService;
+
+    @Autowired
+    private ApprovalRequestRepository approvalRequestRepository;
+
+    @Autowired
+    private RecordingFanOut fanOut;
+
+    @BeforeEach
+    void setUp() {
+        fanOut.batches.clear();
+    }
+
+    @Test
+    void aRetryUnderTheSameKeyReplaysTheOriginalApproval() throws Exception {
+        ApprovalRequestDTO request = request(UUID.randomUUID().toString());
+        String key = UUID.randomUUID().toString();
+
+        RegistrationResult first = registrationService.register(request, key);
+        RegistrationResult retry = registrationService.register(request(request.getObjectId()), key);
+
+        assertFalse(first.replayed());
+        assertTrue(retry.replayed());
+        assertEquals(first.approvalId(), retry.approvalId());
+        // Nothing to notify on a replay
+        assertNull(retry.approvalRequest());
+    }
+
+    @Test
+    void aKeyReusedForAnotherRequestIsRefused() throws Exception {
+        String key = UUID.randomUUID().toString();
+        registrationService.register(request(UUID.randomUUID().toString()), key);
+
+        ApprovalRequestDTO other = request(UUID.randomUUID().toString());
+        assertThrows(IdempotencyKeyConflictException.class, () -> registrationService.register(other, key));
+        assertTrue(approvalRequestRepository.findActiveId(other.getOrigin(), other.getObjectType(), other.getObjectId()).isEmpty());
+    }
+
+    @Test
+    void withoutAKeyTheActiveRequestForTheSameObjectIsReplayed() throws Exception {
+        String objectId = UUID.randomUUID().toString();
+
+        RegistrationResult first = registrationService.register(request(objectId), null);
+        RegistrationResult again = registrationService.register(request(objectId), " ");
+
+        assertFalse(first.replayed());
+        assertTrue(again.replayed());
+        assertEquals(first.approvalId(), again.approvalId());
+    }
+
+    @Test
+    void concurrentRetriesCreateOneApproval() throws Exception {
+        String objectId = UUID.randomUUID().toString();
+        String key = UUID.randomUUID().toString();
+        int retries = 4;
+        ExecutorService clients = Executors.newFixedThreadPool(retries);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<RegistrationResult>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < retries; i++) {
+                results.add(clients.submit(() -> {
+                    start.await();
+                    return registrationService.register(request(objectId), key);
+                }));
+            }
+            start.countDown();
+
+            List<RegistrationResult> outcomes = new ArrayList<>();
+            for (Future<RegistrationResult> result : results) {
+                outcomes.add(result.get(30, TimeUnit.SECONDS));
+            }
+            // Whoever loses the race on the constraints answers with the winner's approval
+            assertEquals(1, outcomes.stream().filter(outcome -> !outcome.replayed()).count());
+            assertEquals(1, outcomes.stream().map(RegistrationResult::approvalId).distinct().count());
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    void aBatchOfCleanChunksIsCreatedAndEachApproverNotifiedOnce() {
+        List<ApprovalRequestDTO> batch = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            batch.add(request(UUID.randomUUID().toString()));
+        }
+
+        List<BatchItemResult> results = registrationService.registerBatch(batch);
+
+        assertTrue(results.stream().allMatch(BatchItemResult::created));
+        assertEquals(1, fanOut.batches.size());
+        assertEquals(createdIds(results), notifiedIds("+33612345678"));
+    }
+
+    @Test
+    void aRefusedChunkFallsBackToOneByOneAndOnlyTheBadEntriesFail() throws Exception {
+        String registered = UUID.randomUUID().toString();
+        String existingId = registrationService.register(request(registered), null).approvalId();
+        String twice = UUID.randomUUID().toString();
+        ApprovalRequestDTO invalid = request(UUID.randomUUID().toString());
+        invalid.setDemandeur(null);
+
+        // Accepted entries 0, 1, 2 | 4, 5, 6 make two chunks, each refused as a whole by uq_approval_active_object
+        List<BatchItemResult> results = registrationService.registerBatch(List.of(
+                request(UUID.randomUUID().toString()),
+                request(registered),
+                request(UUID.randomUUID().toString()),
+                invalid,
+                request(twice),
+                request(twice),
+                request(UUID.randomUUID().toString())));
+
+        assertEquals(List.of(BatchItemResult.CREATED, BatchItemResult.DUPLICATE, BatchItemResult.CREATED, BatchItemResult.INVALID,
+                        BatchItemResult.CREATED, BatchItemResult.DUPLICATE, BatchItemResult.CREATED),
+                results.stream().map(BatchItemResult::status).toList());
+        assertEquals(existingId, results.get(1).approvalId());
+        assertEquals(results.get(4).approvalId(), results.get(5).approvalId());
+        // The retried entries really are in the database, under the ids reported
+        assertEquals(results.get(4).approvalId(), approvalRequestRepository.findActiveId("ERP", "FACTURE", twice).orElseThrow());
+        // Only what this batch created is notified
+        assertEquals(createdIds(results), notifiedIds("+33612345678"));
+    }
+
+    private static Set<String> createdIds(List<BatchItemResult> results) {
+        return results.stream().filter(BatchItemResult::created).map(BatchItemResult::approvalId).collect(Collectors.toSet());
+    }
+
+    private Set<String> notifiedIds(String approver) {
+        return fanOut.batches.stream()
+                .flatMap(batch -> batch.getOrDefault(approver, List.of()).stream())
+                .map(ApprovalRequest::getId)
+                .collect(Collectors.toSet());
+    }
+
+    private static ApprovalRequestDTO request(String objectId) {
+        ApprovalRequestDTO request = new ApprovalRequestDTO(Map.of("montant", 1200));
+        request.setObjectType("FACTURE");
+        request.setObjectId(objectId);
+        request.setOrigin("ERP");
+        request.setDemandeur("comptabilite");
+        request.setApprovers(List.of("+33612345678"));
+        return request;
+    }
+}
@@ -0,0 +1,96 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import org.junit.jupiter.api.Test;
+import org.sid.serviceapprobationwhatsapp.dto.ButtonToken;
+import org.sid.serviceapprobationwhatsapp.ids.UuidV7;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ButtonTokenServiceImplTest {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+    private static final long LIFETIME_HOURS = 168;
+
+    private final ButtonTokenServiceImpl tokens = new ButtonTokenServiceImpl(SECRET, LIFETIME_HOURS);
+
+    @Test
+    void decodesWhatItEncoded() {
+        String approvalId = UuidV7.generateString();
+
+        String token = tokens.encode(approvalId, 3);
+        Optional<ButtonToken> decoded = tokens.decode(token);
+
+        assertEquals(46, token.length());
+        assertTrue(decoded.isPresent());
+        assertEquals(approvalId, decoded.get().approvalId());
+        assertEquals(3, decoded.get().approverIndex());
+        Instant expected = Instant.now().plus(Duration.ofHours(LIFETIME_HOURS));
+        assertTrue(Duration.between(decoded.get().expiresAt(), expected).abs().getSeconds() <= 2);
+    }
+
+    @Test
+    void keepsTheFullApproverIndexRange() {
+        String approvalId = UuidV7.generateString();
+
+        assertEquals(0, tokens.decode(tokens.encode(approvalId, 0)).orElseThrow().approverIndex());
+        assertEquals(255, tokens.decode(tokens.encode(approvalId, 255)).orElseThrow().approverIndex());
+        assertThrows(IllegalArgumentException.class, () -> tokens.encode(approvalId, 256));
+        assertThrows(IllegalArgumentException.class, () -> tokens.encode(approvalId, -1));
+    }
+
+    @Test
+    void rejectsATamperedBody() {
+        byte[] bytes = Base64.getUrlDecoder().decode(tokens.encode(UuidV7.generateString(), 1));
+        // Approver index byte: 1 + 16
+        bytes[17] = 2;
+
+        assertTrue(tokens.decode(Base64.getUrlEncoder().withoutPadding().encodeToString(bytes)).isEmpty());
+    }
+
+    @Test
+    void rejectsATamperedSignature() {
+        byte[] bytes = Base64.getUrlDecoder().decode(tokens.encode(UuidV7.generateString(), 1));
+        bytes[bytes.length - 1] ^= 0x01;
+
+        assertTrue(tokens.decode(Base64.getUrlEncoder().withoutPadding().encodeToString(bytes)).isEmpty());
+    }
+
+    @Test
+    void rejectsATokenSignedWithAnotherSecret() {
+        ButtonTokenServiceImpl otherNode = new ButtonTokenServiceImpl("fedcba9876543210fedcba9876543210", LIFETIME_HOURS);
+
+        assertTrue(tokens.decode(otherNode.encode(UuidV7.generateString(), 1)).isEmpty());
+    }
+
+    @Test
+    void rejectsAnExpiredToken() {
+        ButtonTokenServiceImpl expiredIssuer = new ButtonTokenServiceImpl(SECRET, -1);
+
+        assertTrue(tokens.decode(expiredIssuer.encode(UuidV7.generateString(), 1)).isEmpty());
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        String token = tokens.encode(UuidV7.generateString(), 1);
+
+        assertTrue(tokens.decode("not a token!").isEmpty());
+        assertTrue(tokens.decode("").isEmpty());
+        assertTrue(tokens.decode(token.substring(0, token.length() - 4)).isEmpty());
+        assertTrue(tokens.decode(token + "AAAA").isEmpty());
+        // Legacy raw approval id payloads are not tokens
+        assertTrue(tokens.decode(UuidV7.generateString()).isEmpty());
+    }
+
+    @Test
+    void refusesToStartWithoutAFullLengthSecret() {
+        assertThrows(IllegalStateException.class, () -> new ButtonTokenServiceImpl(null, LIFETIME_HOURS));
+        assertThrows(IllegalStateException.class, () -> new ButtonTokenServiceImpl("too-short", LIFETIME_HOURS));
+    }
+}
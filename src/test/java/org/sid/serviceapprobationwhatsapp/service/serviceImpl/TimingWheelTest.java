@@ -0,0 +1,122 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    private static final long TICK_MS = 10;
+
+    // 8 slots x 2 levels: level 0 covers 8 ticks, level 1 covers 64, anything further is parked
+    private final TimingWheel<String> wheel = new TimingWheel<>(TICK_MS, 8, 2, 0);
+
+    @Test
+    void firesOnTheTickOfItsDeadlineAndNotBefore() {
+        wheel.schedule(45, "a");
+
+        assertEquals(List.of(), wheel.advance(40));
+        assertEquals(List.of("a"), wheel.advance(50));
+        assertEquals(List.of(), wheel.advance(60));
+    }
+
+    @Test
+    void pastDeadlineFiresOnTheNextAdvance() {
+        wheel.advance(100);
+        wheel.schedule(20, "late");
+
+        assertEquals(List.of("late"), wheel.advance(100));
+    }
+
+    @Test
+    void timersCascadeThroughLevelsAndRoundsOnTheirExactTick() {
+        // Level 0, level 1, and past the top level (several full rounds of the wheel)
+        long[] deadlineTicks = {3, 7, 8, 9, 63, 64, 65, 200, 513, 1000};
+        for (long tick : deadlineTicks) {
+            wheel.schedule(tick * TICK_MS, "t" + tick);
+        }
+        assertEquals(deadlineTicks.length, wheel.size());
+
+        List<String> fired = new ArrayList<>();
+        for (long tick = 1; tick <= 1000; tick++) {
+            for (String item : wheel.advance(tick * TICK_MS)) {
+                assertEquals("t" + tick, item, "fired on the wrong tick");
+                fired.add(item);
+            }
+        }
+
+        assertEquals(deadlineTicks.length, fired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void largeJumpReturnsEveryTimerPassedOver() {
+        wheel.schedule(30, "near");
+        wheel.schedule(900, "middle");
+        wheel.schedule(9_000, "far");
+
+        List<String> due = wheel.advance(1_000);
+
+        assertEquals(List.of("near", "middle"), due);
+        assertEquals(List.of("far"), wheel.advance(9_000));
+    }
+
+    @Test
+    void cancelledTimerNeverFires() {
+        TimingWheel.Timer<String> cancelled = wheel.schedule(50, "cancelled");
+        wheel.schedule(50, "kept");
+
+        assertTrue(wheel.cancel(cancelled));
+        assertEquals(1, wheel.size());
+        assertEquals(List.of("kept"), wheel.advance(100));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelledTimerIsDroppedWhenItsSlotCascades() {
+        TimingWheel.Timer<String> parked = wheel.schedule(5_000, "parked");
+        TimingWheel.Timer<String> levelOne = wheel.schedule(300, "level-one");
+
+        assertTrue(wheel.cancel(parked));
+        assertTrue(wheel.cancel(levelOne));
+
+        for (long now = TICK_MS; now <= 6_000; now += TICK_MS) {
+            assertEquals(List.of(), wheel.advance(now));
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelIsRefusedOnceExpiredOrAlreadyCancelled() {
+        TimingWheel.Timer<String> expired = wheel.schedule(10, "expired");
+        TimingWheel.Timer<String> cancelled = wheel.schedule(10, "cancelled");
+        assertTrue(wheel.cancel(cancelled));
+
+        assertEquals(List.of("expired"), wheel.advance(10));
+
+        assertFalse(wheel.cancel(expired));
+        assertFalse(wheel.cancel(cancelled));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancellingAnOverdueTimerKeepsItFromFiring() {
+        wheel.advance(100);
+        TimingWheel.Timer<String> late = wheel.schedule(20, "late");
+
+        assertTrue(wheel.cancel(late));
+        assertEquals(List.of(), wheel.advance(100));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void wheelSizeMustBeAPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel<String>(TICK_MS, 10, 2, 0));
+    }
+}
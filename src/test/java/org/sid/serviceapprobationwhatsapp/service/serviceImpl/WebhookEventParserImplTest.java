@@ -0,0 +1,78 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.sid.serviceapprobationwhatsapp.dto.WebhookEvent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Bodies in src/test/resources/webhooks follow the Cloud API webhook examples (template quick replies arrive as type "button")
+class WebhookEventParserImplTest {
+
+    private final WebhookEventParserImpl parser = new WebhookEventParserImpl(new ObjectMapper());
+
+    @Test
+    void readsATemplateQuickReply() throws IOException {
+        List<WebhookEvent> events = parser.parse(fixture("button-reply.json"));
+
+        assertEquals(List.of(new WebhookEvent.ButtonClick(
+                "wamid.HBgLMTY1MDM4Nzk0MzkVAgASGCBBMDdFM0Q2QTdEQkU5QkU5MjlENjdEMzk2QkY4Qjg0OAA=",
+                "16505551234",
+                "wamid.HBgLMTY1MDM4Nzk0MzkVAgARGBJBMzNEQkE1RkU2MjA4QjJBRDcA",
+                "APPROVE_AZBhc2RmZ2hqa2w7J3p4Y3Zibm0sLi8xMjM0NTY3",
+                "Approuver")), events);
+    }
+
+    @Test
+    void readsATextMessage() throws IOException {
+        List<WebhookEvent> events = parser.parse(fixture("text-message.json"));
+
+        assertEquals(List.of(new WebhookEvent.TextMessage(
+                "wamid.HBgLMTY1MDM4Nzk0MzkVAgASGBQzQUFERjg0NDEzNDdFODU3MUMxMAA=", "16505551234", "482913")), events);
+    }
+
+    @Test
+    void readsStatusesAndSkipsPricingAndErrors() throws IOException {
+        List<WebhookEvent> events = parser.parse(fixture("statuses.json"));
+
+        assertEquals(List.of(
+                new WebhookEvent.Status("wamid.HBgLMTY1MDM4Nzk0MzkVAgARGBI3MTE5MjVBOTE3MDk5QUVFM0YA", "16505551234", "delivered"),
+                new WebhookEvent.Status("wamid.HBgLMTY1MDM4Nzk0MzkVAgARGBIyRkY0QzI2NTZBMjhCOTdFQTQA", "16505551234", "failed")), events);
+    }
+
+    @Test
+    void keepsSupportedEventsAcrossEntriesInOrder() throws IOException {
+        List<WebhookEvent> events = parser.parse(fixture("mixed-batch.json"));
+
+        // Image and interactive messages are not used by the approval flow
+        assertEquals(List.of(
+                new WebhookEvent.TextMessage("wamid.text", "16505551234", "RESEND"),
+                new WebhookEvent.Status("wamid.read", "33612345678", "read")), events);
+    }
+
+    @Test
+    void bodyWithoutEntriesHasNoEvents() throws IOException {
+        assertEquals(List.of(), parser.parse("{\"object\":\"whatsapp_business_account\",\"entry\":[]}".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(List.of(), parser.parse("{}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void rejectsBodiesThatAreNotAJsonObject() {
+        assertThrows(IOException.class, () -> parser.parse("[]".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IOException.class, () -> parser.parse("{\"entry\":[{\"changes\":[".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] fixture(String name) throws IOException {
+        try (InputStream in = WebhookEventParserImplTest.class.getResourceAsStream("/webhooks/" + name)) {
+            assertNotNull(in, name);
+            return in.readAllBytes();
+        }
+    }
+}
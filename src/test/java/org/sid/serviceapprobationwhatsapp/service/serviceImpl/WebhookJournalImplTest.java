@@ -0,0 +1,182 @@
+package org.sid.serviceapprobationwhatsapp.service.serviceImpl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sid.serviceapprobationwhatsapp.service.WebhookProcessor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WebhookJournalImplTest {
+
+    private static final int HEADER_SIZE = 8;
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private final List<String> processed = new CopyOnWriteArrayList<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private WebhookJournalImpl journal;
+
+    @AfterEach
+    void stopJournal() throws InterruptedException {
+        if (journal != null) {
+            journal.stop();
+        }
+    }
+
+    @Test
+    void processesAppendedRecordsInOrderAcrossSegments() throws Exception {
+        journal = start(payload -> processed.add(text(payload)));
+
+        // Large enough to roll over a few 4 KiB segments
+        String padding = "x".repeat(900);
+        for (int i = 0; i < 20; i++) {
+            journal.append(bytes(i + padding));
+        }
+
+        awaitUntil(() -> processed.size() == 20);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i + padding, processed.get(i));
+        }
+    }
+
+    @Test
+    void replaysRecordsPastTheCheckpointOnRestart() throws Exception {
+        journal = start(payload -> processed.add(text(payload)));
+        journal.append(bytes("first"));
+        journal.append(bytes("second"));
+        awaitUntil(() -> processed.size() == 2);
+        journal.stop();
+
+        // As if the node died before checkpointing
+        Files.delete(directory.resolve("checkpoint"));
+        processed.clear();
+        journal = start(payload -> processed.add(text(payload)));
+
+        awaitUntil(() -> processed.size() == 2);
+        assertEquals(List.of("first", "second"), processed);
+    }
+
+    @Test
+    void recoversAfterATornWriteAndOverwritesIt() throws Exception {
+        journal = start(payload -> processed.add(text(payload)));
+        journal.append(bytes("before-crash"));
+        awaitUntil(() -> processed.size() == 1);
+        journal.stop();
+
+        // A crash mid-append: the length made it to disk, the payload only partly
+        int tornOffset = HEADER_SIZE + "before-crash".length();
+        writeAt(segment(), tornOffset, ByteBuffer.allocate(HEADER_SIZE + 3).putInt(100).putInt(0xCAFE).put(bytes("par")).flip());
+        Files.delete(directory.resolve("checkpoint"));
+        processed.clear();
+
+        journal = start(payload -> processed.add(text(payload)));
+        awaitUntil(() -> processed.size() == 1);
+        journal.append(bytes("after-restart"));
+
+        awaitUntil(() -> processed.size() == 2);
+        assertEquals(List.of("before-crash", "after-restart"), processed);
+        try (FileChannel channel = FileChannel.open(segment(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            channel.read(header, tornOffset);
+            assertEquals("after-restart".length(), header.flip().getInt());
+        }
+    }
+
+    @Test
+    void sealsTheActiveSegmentToSkipACorruptRecord() throws Exception {
+        CountDownLatch firstProcessing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        journal = start(payload -> {
+            if ("first".equals(text(payload))) {
+                firstProcessing.countDown();
+                await(release);
+            }
+            processed.add(text(payload));
+        });
+
+        journal.append(bytes("first"));
+        assertTrue(firstProcessing.await(5, TimeUnit.SECONDS));
+        journal.append(bytes("second"));
+        // Flip a payload byte of the durable second record while the consumer is busy with the first
+        writeAt(segment(), 2 * HEADER_SIZE + "first".length(), ByteBuffer.wrap(bytes("S")));
+        release.countDown();
+
+        awaitUntil(() -> counter() == 1.0);
+        // The writer moved on to a fresh segment, what follows the corrupt record is processed
+        journal.append(bytes("third"));
+
+        awaitUntil(() -> processed.size() == 2);
+        assertEquals(List.of("first", "third"), processed);
+        assertEquals(1.0, counter());
+        assertTrue(Files.exists(directory.resolve(String.format("segment-%010d.log", 2))));
+    }
+
+    private WebhookJournalImpl start(WebhookProcessor processor) throws IOException {
+        WebhookJournalImpl started = new WebhookJournalImpl(processor, meterRegistry);
+        ReflectionTestUtils.setField(started, "directory", directory.toString());
+        ReflectionTestUtils.setField(started, "segmentSize", SEGMENT_SIZE);
+        ReflectionTestUtils.setField(started, "flushIntervalMs", 1L);
+        ReflectionTestUtils.setField(started, "checkpointIntervalMs", 20L);
+        ReflectionTestUtils.setField(started, "stallBackoffMaxMs", 50L);
+        started.start();
+        return started;
+    }
+
+    private double counter() {
+        return meterRegistry.get("webhook.journal.unreadable").counter().count();
+    }
+
+    private Path segment() {
+        return directory.resolve(String.format("segment-%010d.log", 1));
+    }
+
+    private static void writeAt(Path file, int offset, ByteBuffer content) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(content, offset);
+            channel.force(false);
+        }
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within 5s");
+            Thread.sleep(10);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] payload) {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+}